@@ -0,0 +1,20 @@
+package com.fourj.productservice.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Cache đọc cho sản phẩm.
+ * CacheManager do Spring Boot tạo theo spring.cache.* (mặc định Caffeine trong bộ nhớ, có thể chuyển
+ * sang Redis bằng spring.cache.type=redis); metrics cache.gets{result=hit|miss} được actuator đăng ký tự động.
+ * Advisor của cache nằm ngoài advisor transaction nên cache chỉ bị xóa sau khi transaction đã commit,
+ * tránh trường hợp request đọc đồng thời nạp lại dữ liệu cũ vào cache.
+ */
+@Configuration
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
+public class CacheConfig {
+
+    public static final String PRODUCTS = "products";
+    public static final String CATEGORY_PRODUCTS = "categoryProducts";
+}
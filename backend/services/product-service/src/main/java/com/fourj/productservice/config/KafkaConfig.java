@@ -1,8 +1,11 @@
 package com.fourj.productservice.config;
 
 import com.fourj.productservice.event.dto.ProductEventDto;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 
@@ -21,4 +24,15 @@ public class KafkaConfig {
     public KafkaTemplate<String, ProductEventDto> kafkaTemplate(ProducerFactory<String, ProductEventDto> producerFactory) {
         return new KafkaTemplate<>(producerFactory);
     }
-} 
\ No newline at end of file
+
+    /**
+     * KafkaTemplate cho các message dạng chuỗi (broadcast thay đổi danh mục).
+     * ProducerFactory được tạo riêng, không khai báo bean, để không thay thế ProducerFactory của Spring Boot
+     * (dùng serializer nhị phân của sự kiện sản phẩm).
+     */
+    @Bean
+    public KafkaTemplate<String, String> stringKafkaTemplate(KafkaProperties kafkaProperties) {
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                kafkaProperties.buildProducerProperties(null), new StringSerializer(), new StringSerializer()));
+    }
+}
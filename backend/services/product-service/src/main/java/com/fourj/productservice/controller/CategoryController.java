@@ -2,12 +2,15 @@ package com.fourj.productservice.controller;
 
 import com.fourj.productservice.dto.CategoryCreateDto;
 import com.fourj.productservice.dto.CategoryDto;
+import com.fourj.productservice.dto.CategorySnapshot;
 import com.fourj.productservice.service.CategoryService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -28,13 +31,24 @@ public class CategoryController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<CategoryDto> getCategoryById(@PathVariable Long id) {
-        return ResponseEntity.ok(categoryService.getCategoryById(id));
+    public ResponseEntity<CategoryDto> getCategoryById(@PathVariable Long id, WebRequest webRequest) {
+        CategoryDto category = categoryService.getCategoryById(id);
+        return ConditionalGet.respond(webRequest, ConditionalGet.etag(category), ConditionalGet.lastModified(category), category);
     }
 
+    /**
+     * Trả về 304 khi If-None-Match khớp ETag của snapshot hiện tại; client luôn phải revalidate (no-cache)
+     */
     @GetMapping
-    public ResponseEntity<List<CategoryDto>> getAllCategories() {
-        return ResponseEntity.ok(categoryService.getAllCategories());
+    public ResponseEntity<List<CategoryDto>> getAllCategories(WebRequest webRequest) {
+        CategorySnapshot snapshot = categoryService.getCategorySnapshot();
+        if (webRequest.checkNotModified(snapshot.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(snapshot.categories());
     }
 
     @PutMapping("/{id}")
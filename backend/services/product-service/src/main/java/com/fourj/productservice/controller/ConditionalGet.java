@@ -0,0 +1,142 @@
+package com.fourj.productservice.controller;
+
+import com.fourj.productservice.dto.CategoryDto;
+import com.fourj.productservice.dto.ListingVersion;
+import com.fourj.productservice.dto.ProductDto;
+import com.fourj.productservice.dto.ProductVersion;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * ETag/Last-Modified cho các GET sản phẩm và danh mục.
+ * ETag được tính từ id + updatedAt (và tên danh mục, vì đổi tên danh mục không đổi updatedAt của sản phẩm),
+ * listing theo danh mục dùng fingerprint của cả trang, listing toàn bộ/tìm kiếm dùng version của catalog. Khi client gửi lại ETag còn khớp thì trả 304 không có body,
+ * bỏ qua bước serialize JSON và truyền dữ liệu.
+ */
+final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * 304 nếu request có If-None-Match/If-Modified-Since còn hợp lệ, ngược lại 200 kèm ETag và body
+     */
+    static <T> ResponseEntity<T> respond(WebRequest request, String etag, long lastModified, T body) {
+        if (request.checkNotModified(etag, lastModified)) {
+            // Spring đã đặt status 304 và các header
+            return null;
+        }
+        return ok(etag, lastModified, body);
+    }
+
+    /**
+     * Như respond, nhưng validator được tính trước (projection, version của catalog); body chỉ được nạp khi không trả 304
+     */
+    static <T> ResponseEntity<T> respondIfModified(WebRequest request, String etag, long lastModified, Supplier<T> body) {
+        if (request.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+        return ok(etag, lastModified, body.get());
+    }
+
+    private static <T> ResponseEntity<T> ok(String etag, long lastModified, T body) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache());
+        if (lastModified > 0) {
+            builder.lastModified(lastModified);
+        }
+        return builder.body(body);
+    }
+
+    static String etag(ProductDto product) {
+        return "\"" + fingerprint(productKey(product)) + "\"";
+    }
+
+    /**
+     * Cùng giá trị với etag(ProductDto) của cùng sản phẩm
+     */
+    static String etag(ProductVersion version) {
+        return "\"" + fingerprint(productKey(version.id(), version.updatedAt(), version.categoryName())) + "\"";
+    }
+
+    static String etag(CategoryDto category) {
+        return "\"" + fingerprint(category.getId() + "|" + category.getUpdatedAt()) + "\"";
+    }
+
+    /**
+     * ETag yếu cho một trang: phụ thuộc vị trí trang, tổng số phần tử và từng sản phẩm trong trang
+     */
+    static String etag(Page<ProductDto> page) {
+        StringBuilder canonical = new StringBuilder(64 + page.getNumberOfElements() * 48);
+        canonical.append(page.getNumber()).append('|')
+                .append(page.getSize()).append('|')
+                .append(page.getSort()).append('|')
+                .append(page.getTotalElements()).append('\n');
+        page.forEach(product -> canonical.append(productKey(product)).append('\n'));
+        return "W/\"" + fingerprint(canonical.toString()) + "\"";
+    }
+
+    /**
+     * ETag yếu cho listing tính từ version của catalog, không cần nạp trang.
+     * Mọi thay đổi hiển thị trên listing (trang nào cũng vậy) đều đổi ETag; listing không có Last-Modified
+     */
+    static String etag(ListingVersion version, Pageable pageable, String keyword) {
+        String canonical = version.catalogVersion() + "|" + version.categoriesEtag() + "|"
+                + pageable.getPageNumber() + "|" + pageable.getPageSize() + "|" + pageable.getSort() + "|"
+                + Objects.toString(keyword, "");
+        return "W/\"" + fingerprint(canonical) + "\"";
+    }
+
+    static long lastModified(ProductVersion version) {
+        return toEpochMillis(version.updatedAt());
+    }
+
+    static long lastModified(CategoryDto category) {
+        return toEpochMillis(category.getUpdatedAt());
+    }
+
+    static long lastModified(Page<ProductDto> page) {
+        return page.stream()
+                .map(ProductDto::getUpdatedAt)
+                .filter(Objects::nonNull)
+                .max(LocalDateTime::compareTo)
+                .map(ConditionalGet::toEpochMillis)
+                .orElse(-1L);
+    }
+
+    private static String productKey(ProductDto product) {
+        return productKey(product.getId(), product.getUpdatedAt(), product.getCategoryName());
+    }
+
+    private static String productKey(Long id, LocalDateTime updatedAt, String categoryName) {
+        return id + "|" + updatedAt + "|" + categoryName;
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        // updatedAt được ghi bằng LocalDateTime.now() theo múi giờ của server
+        return timestamp == null ? -1 : timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String fingerprint(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 luôn có sẵn trên JVM chuẩn
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
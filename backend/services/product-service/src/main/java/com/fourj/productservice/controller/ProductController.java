@@ -1,8 +1,10 @@
 package com.fourj.productservice.controller;
 
+import com.fourj.productservice.dto.ListingVersion;
 import com.fourj.productservice.dto.ProductCreateDto;
 import com.fourj.productservice.dto.ProductDto;
 import com.fourj.productservice.dto.ProductUpdateDto;
+import com.fourj.productservice.dto.ProductVersion;
 import com.fourj.productservice.service.ProductService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +15,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import lombok.extern.slf4j.Slf4j;
 
 @RestController
@@ -33,8 +36,11 @@ public class ProductController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<ProductDto> getProductById(@PathVariable Long id) {
-        return ResponseEntity.ok(productService.getProductById(id));
+    public ResponseEntity<ProductDto> getProductById(@PathVariable Long id, WebRequest webRequest) {
+        // So ETag bằng projection (updatedAt, tên danh mục) trước khi nạp và map sản phẩm
+        ProductVersion version = productService.getProductVersion(id);
+        return ConditionalGet.respondIfModified(webRequest, ConditionalGet.etag(version),
+                ConditionalGet.lastModified(version), () -> productService.getProductById(id));
     }
 
     @GetMapping
@@ -42,13 +48,17 @@ public class ProductController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            WebRequest webRequest) {
 
         Sort sort = sortDir.equalsIgnoreCase("asc") ?
                 Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
-        return ResponseEntity.ok(productService.getAllProducts(pageable));
+        // Kiểm tra If-None-Match bằng version của catalog trước khi truy vấn và map cả trang
+        ListingVersion version = productService.getListingVersion();
+        return ConditionalGet.respondIfModified(webRequest, ConditionalGet.etag(version, pageable, null),
+                -1, () -> productService.getAllProducts(pageable));
     }
 
     @GetMapping("/category/{categoryId}")
@@ -57,13 +67,15 @@ public class ProductController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            WebRequest webRequest) {
 
         Sort sort = sortDir.equalsIgnoreCase("asc") ?
                 Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
-        return ResponseEntity.ok(productService.getProductsByCategory(categoryId, pageable));
+        Page<ProductDto> products = productService.getProductsByCategory(categoryId, pageable);
+        return ConditionalGet.respond(webRequest, ConditionalGet.etag(products), ConditionalGet.lastModified(products), products);
     }
 
     @GetMapping("/search")
@@ -72,13 +84,16 @@ public class ProductController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            WebRequest webRequest) {
 
         Sort sort = sortDir.equalsIgnoreCase("asc") ?
                 Sort.by(sortBy).ascending() : Sort.by(sortBy).descending();
         Pageable pageable = PageRequest.of(page, size, sort);
 
-        return ResponseEntity.ok(productService.searchProducts(keyword, pageable));
+        ListingVersion version = productService.getListingVersion();
+        return ConditionalGet.respondIfModified(webRequest, ConditionalGet.etag(version, pageable, keyword),
+                -1, () -> productService.searchProducts(keyword, pageable));
     }
 
     @PutMapping("/{id}")
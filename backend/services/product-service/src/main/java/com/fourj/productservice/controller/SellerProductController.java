@@ -1,8 +1,10 @@
 package com.fourj.productservice.controller;
 
+import com.fourj.productservice.dto.BulkImportResultDto;
 import com.fourj.productservice.dto.ProductCreateDto;
 import com.fourj.productservice.dto.ProductDto;
 import com.fourj.productservice.dto.ProductUpdateDto;
+import com.fourj.productservice.service.ProductBulkService;
 import com.fourj.productservice.service.ProductService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
@@ -11,12 +13,18 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/api/products/seller")
@@ -24,11 +32,16 @@ import org.springframework.web.bind.annotation.*;
 @PreAuthorize("hasAuthority('seller:access')")
 public class SellerProductController {
 
+    private static final String TEXT_CSV = "text/csv";
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private final ProductService productService;
+    private final ProductBulkService productBulkService;
 
     @Autowired
-    public SellerProductController(ProductService productService) {
+    public SellerProductController(ProductService productService, ProductBulkService productBulkService) {
         this.productService = productService;
+        this.productBulkService = productBulkService;
     }
 
     @PostMapping
@@ -43,6 +56,40 @@ public class SellerProductController {
         return new ResponseEntity<>(productService.createProduct(productCreateDto), HttpStatus.CREATED);
     }
 
+    /**
+     * Nhập sản phẩm hàng loạt từ body CSV (text/csv) hoặc NDJSON (application/x-ndjson), đọc theo luồng
+     */
+    @PostMapping(value = "/bulk-import", consumes = {TEXT_CSV, APPLICATION_NDJSON})
+    public ResponseEntity<BulkImportResultDto> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                              InputStream body,
+                                                              @AuthenticationPrincipal Jwt jwt) throws IOException {
+        String sellerId = jwt.getSubject();
+        ProductBulkService.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(TEXT_CSV))
+                ? ProductBulkService.Format.CSV
+                : ProductBulkService.Format.NDJSON;
+        log.info("Seller {} nhập sản phẩm hàng loạt ({})", sellerId, format);
+
+        return ResponseEntity.ok(productBulkService.importProducts(sellerId, format, body));
+    }
+
+    /**
+     * Xuất toàn bộ sản phẩm của seller dạng CSV hoặc NDJSON, ghi theo luồng
+     */
+    @GetMapping("/bulk-export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "csv") String format,
+                                                                @AuthenticationPrincipal Jwt jwt) {
+        String sellerId = jwt.getSubject();
+        boolean csv = !"ndjson".equalsIgnoreCase(format);
+        ProductBulkService.Format exportFormat = csv ? ProductBulkService.Format.CSV : ProductBulkService.Format.NDJSON;
+
+        StreamingResponseBody body = output -> productBulkService.exportProducts(sellerId, exportFormat, output);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(csv ? TEXT_CSV + ";charset=UTF-8" : APPLICATION_NDJSON))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"products." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
+    }
+
     @GetMapping("/my-products")
     public ResponseEntity<Page<ProductDto>> getSellerProducts(
             @AuthenticationPrincipal Jwt jwt,
@@ -0,0 +1,29 @@
+package com.fourj.productservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kết quả nhập sản phẩm hàng loạt: số dòng thành công, thất bại và lỗi của từng dòng
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkImportResultDto {
+    private int imported;
+    private int failed;
+    // Chỉ giữ một số lỗi đầu tiên, tổng số dòng lỗi nằm ở failed
+    private List<RowError> errors = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private long line;
+        private String message;
+    }
+}
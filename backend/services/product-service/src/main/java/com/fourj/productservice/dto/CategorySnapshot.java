@@ -0,0 +1,45 @@
+package com.fourj.productservice.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ảnh chụp bất biến của toàn bộ danh mục, được thay thế nguyên khối khi danh mục thay đổi.
+ * ETag được tính từ nội dung nên mọi replica có cùng dữ liệu sẽ trả cùng ETag.
+ */
+public record CategorySnapshot(List<CategoryDto> categories, Map<Long, CategoryDto> byId, String etag, Instant loadedAt) {
+
+    public static CategorySnapshot of(List<CategoryDto> categories) {
+        List<CategoryDto> ordered = categories.stream()
+                .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                .toList();
+        Map<Long, CategoryDto> byId = ordered.stream()
+                .collect(Collectors.toUnmodifiableMap(CategoryDto::getId, Function.identity()));
+        return new CategorySnapshot(ordered, byId, computeEtag(ordered), Instant.now());
+    }
+
+    private static String computeEtag(List<CategoryDto> categories) {
+        StringBuilder canonical = new StringBuilder();
+        for (CategoryDto category : categories) {
+            canonical.append(category.getId()).append('|')
+                    .append(category.getName()).append('|')
+                    .append(category.getDescription()).append('|')
+                    .append(category.getUpdatedAt()).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 luôn có sẵn trên JVM chuẩn
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.fourj.productservice.dto;
+
+/**
+ * Validator cho danh sách sản phẩm: version của catalog (tăng khi có thay đổi hiển thị trên listing)
+ * và ETag của snapshot danh mục (đổi tên danh mục thay đổi categoryName trong DTO mà không đụng tới sản phẩm).
+ */
+public record ListingVersion(long catalogVersion, String categoriesEtag) {
+}
@@ -6,10 +6,12 @@ import lombok.NoArgsConstructor;
 
 import jakarta.validation.constraints.NotBlank;
 
+import java.io.Serializable;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class ProductAttributeDto {
+public class ProductAttributeDto implements Serializable {
     private Long id;
 
     @NotBlank(message = "Tên thuộc tính không được để trống")
@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -13,12 +14,13 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class ProductDto {
+public class ProductDto implements Serializable {
     private Long id;
     private String name;
     private String description;
     private BigDecimal price;
     private Integer stockQuantity;
+    private Integer soldCount;
     private String imageUrl;
     private Long categoryId;
     private String categoryName;
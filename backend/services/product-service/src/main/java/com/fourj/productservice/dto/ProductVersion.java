@@ -0,0 +1,9 @@
+package com.fourj.productservice.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Các trường tạo nên ETag của một sản phẩm, đọc bằng projection thay vì nạp entity và thuộc tính
+ */
+public record ProductVersion(Long id, LocalDateTime updatedAt, String categoryName) {
+}
@@ -0,0 +1,7 @@
+package com.fourj.productservice.event;
+
+/**
+ * Sự kiện nội bộ (Spring) khi danh mục được tạo, cập nhật hoặc xóa
+ */
+public record CategoriesChangedEvent(Long categoryId) {
+}
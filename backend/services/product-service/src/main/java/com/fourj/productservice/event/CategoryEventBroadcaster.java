@@ -0,0 +1,77 @@
+package com.fourj.productservice.event;
+
+import com.fourj.productservice.service.impl.CategorySnapshotHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Báo cho các replica khác của product-service nạp lại snapshot danh mục.
+ * Message chỉ mang id của replica gửi. Mọi message đi vào partition 0 và mỗi replica tự gán partition đó
+ * (assign, không tham gia rebalance) rồi seek tới cuối khi khởi động, nên replica nào cũng nhận mọi message
+ * mà không phải tạo consumer group mới cho mỗi lần khởi động.
+ */
+@Component
+@Slf4j
+public class CategoryEventBroadcaster implements ConsumerSeekAware {
+
+    private static final int PARTITION = 0;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final CategorySnapshotHolder categorySnapshotHolder;
+
+    @Value("${kafka.topics.category-events:category-events}")
+    private String categoryEventsTopic;
+
+    @Autowired
+    public CategoryEventBroadcaster(@Qualifier("stringKafkaTemplate") KafkaTemplate<String, String> kafkaTemplate,
+                                    CategorySnapshotHolder categorySnapshotHolder) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.categorySnapshotHolder = categorySnapshotHolder;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCategoriesChanged(CategoriesChangedEvent event) {
+        try {
+            kafkaTemplate.send(categoryEventsTopic, PARTITION, null, instanceId);
+            log.info("Broadcast category change for category: {}", event.categoryId());
+        } catch (Exception e) {
+            // Các replica khác vẫn tự nạp lại khi snapshot quá max-age
+            log.error("Failed to broadcast category change for category: {}", event.categoryId(), e);
+        }
+    }
+
+    // Group id cố định chỉ dùng cho commit offset; partition được gán thủ công nên các replica không chia nhau message
+    @KafkaListener(
+            topicPartitions = @org.springframework.kafka.annotation.TopicPartition(
+                    topic = "${kafka.topics.category-events:category-events}", partitions = "0"),
+            groupId = "${spring.application.name}-categories",
+            properties = "enable.auto.commit=false")
+    public void onRemoteChange(String originInstanceId) {
+        if (instanceId.equals(originInstanceId)) {
+            return;
+        }
+        log.debug("Category change broadcast from {}, reloading snapshot", originInstanceId);
+        categorySnapshotHolder.refresh();
+    }
+
+    /**
+     * Chỉ quan tâm thay đổi xảy ra sau khi replica khởi động: snapshot vừa được nạp từ database
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        callback.seekToEnd(assignments.keySet());
+    }
+}
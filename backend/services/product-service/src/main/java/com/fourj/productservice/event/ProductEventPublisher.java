@@ -1,25 +1,96 @@
 package com.fourj.productservice.event;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fourj.productservice.dto.ProductDto;
 import com.fourj.productservice.event.dto.ProductEventDto;
-import lombok.RequiredArgsConstructor;
+import com.fourj.productservice.model.ProductEventOutbox;
+import com.fourj.productservice.repository.ProductEventOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Service để phát sự kiện Kafka
+ * Service để phát sự kiện Kafka.
+ * Khi được gọi trong transaction, sự kiện chỉ được gửi sau khi commit (rollback thì không gửi).
+ * Việc gửi là bất đồng bộ; kết quả được ghi nhận qua metric product.events.publish{event,result}.
+ * Sự kiện gửi lỗi được chuyển qua buffer trong bộ nhớ (callback chạy trên thread I/O của producer, không ghi database ở đó)
+ * rồi scheduler ghi vào bảng product_event_outbox và gửi lại từ bảng, nên không mất khi service khởi động lại.
+ * Sự kiện chỉ bị bỏ khi buffer đầy lúc database cũng lỗi; mỗi lần bỏ đều có log error và metric result=dropped.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ProductEventPublisher {
 
+    private static final List<String> EVENT_TYPES = List.of("PRODUCT_CREATED", "PRODUCT_UPDATED",
+            "PRODUCT_STOCK_CHANGED", "PRODUCT_PRICE_CHANGED", "PRODUCT_DELETED", "PRODUCT_BULK_UPDATED");
+    private static final List<String> RESULTS = List.of("sent", "retried", "dropped");
+
     private final KafkaTemplate<String, ProductEventDto> kafkaTemplate;
+    private final ProductEventOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+    private final String productEventsTopic;
+    private final int retryBatchSize;
+    private final BlockingQueue<PendingEvent> retryBuffer;
+    private final Map<String, Counter> counters;
+    private final AtomicLong outboxSize = new AtomicLong();
+
+    @Autowired
+    public ProductEventPublisher(KafkaTemplate<String, ProductEventDto> kafkaTemplate,
+                                 ProductEventOutboxRepository outboxRepository,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${kafka.topics.product-events:product-events}") String productEventsTopic,
+                                 @Value("${kafka.publisher.retry-buffer-size:10000}") int retryBufferSize,
+                                 @Value("${kafka.publisher.retry-batch-size:500}") int retryBatchSize) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+        this.productEventsTopic = productEventsTopic;
+        this.retryBatchSize = retryBatchSize;
+        this.retryBuffer = new ArrayBlockingQueue<>(retryBufferSize);
+
+        Map<String, Counter> counters = new HashMap<>();
+        for (String eventType : EVENT_TYPES) {
+            for (String result : RESULTS) {
+                counters.put(counterKey(eventType, result), Counter.builder("product.events.publish")
+                        .description("Product events sent to Kafka, by outcome")
+                        .tag("event", eventType)
+                        .tag("result", result)
+                        .register(meterRegistry));
+            }
+        }
+        this.counters = Map.copyOf(counters);
 
-    @Value("${kafka.topics.product-events:product-events}")
-    private String productEventsTopic;
+        Gauge.builder("product.events.retry.buffer", retryBuffer, BlockingQueue::size)
+                .description("Failed product events waiting to be written to the outbox")
+                .register(meterRegistry);
+        Gauge.builder("product.events.outbox", outboxSize, AtomicLong::get)
+                .description("Product events in the outbox waiting to be re-sent to Kafka")
+                .register(meterRegistry);
+    }
 
     /**
      * Phát sự kiện sản phẩm được tạo
@@ -35,6 +106,31 @@ public class ProductEventPublisher {
         publishEvent("PRODUCT_UPDATED", productDto);
     }
 
+    /**
+     * Phát sự kiện chỉ thay đổi tồn kho, payload chỉ gồm id, tồn kho, số lượng đã bán và danh mục
+     */
+    public void publishStockChanged(ProductDto productDto) {
+        publishEvent("PRODUCT_STOCK_CHANGED", ProductDto.builder()
+                .id(productDto.getId())
+                .stockQuantity(productDto.getStockQuantity())
+                .soldCount(productDto.getSoldCount())
+                .categoryName(productDto.getCategoryName())
+                .updatedAt(productDto.getUpdatedAt())
+                .build());
+    }
+
+    /**
+     * Phát sự kiện chỉ thay đổi giá, payload chỉ gồm id, giá và danh mục
+     */
+    public void publishPriceChanged(ProductDto productDto) {
+        publishEvent("PRODUCT_PRICE_CHANGED", ProductDto.builder()
+                .id(productDto.getId())
+                .price(productDto.getPrice())
+                .categoryName(productDto.getCategoryName())
+                .updatedAt(productDto.getUpdatedAt())
+                .build());
+    }
+
     /**
      * Phát sự kiện sản phẩm bị xóa
      */
@@ -42,6 +138,126 @@ public class ProductEventPublisher {
         publishEvent("PRODUCT_DELETED", productDto);
     }
 
+    /**
+     * Phát một sự kiện cho cả lô sản phẩm (nhập hàng loạt); search-service index cả lô bằng một bulk request
+     */
+    public void publishBulkUpdated(List<ProductDto> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType("PRODUCT_BULK_UPDATED")
+                .products(products)
+                .build();
+
+        // Không có key: sản phẩm trong lô thuộc nhiều partition key khác nhau, lô được phân phối tự do
+        publishAfterCommit(new PendingEvent(null, event, products.size() + " products"));
+    }
+
+    /**
+     * Ghi các sự kiện gửi lỗi vào outbox rồi gửi lại outbox theo thứ tự. Thứ tự so với sự kiện mới hơn của cùng
+     * sản phẩm không được đảm bảo, nhưng search-service bỏ qua sự kiện có version cũ hơn bản đã index.
+     */
+    @Scheduled(fixedDelayString = "${kafka.publisher.retry-interval-ms:5000}")
+    public void retryPending() {
+        persistFailed();
+        relayOutbox();
+    }
+
+    /**
+     * Khi tắt service, sự kiện lỗi còn trong buffer được ghi vào outbox để gửi lại sau khi khởi động
+     */
+    @PreDestroy
+    public void persistOnShutdown() {
+        persistFailed();
+    }
+
+    private void persistFailed() {
+        List<PendingEvent> failed = new ArrayList<>();
+        retryBuffer.drainTo(failed);
+        if (failed.isEmpty()) {
+            return;
+        }
+
+        List<PendingEvent> persistable = new ArrayList<>(failed.size());
+        List<ProductEventOutbox> rows = new ArrayList<>(failed.size());
+        for (PendingEvent pendingEvent : failed) {
+            try {
+                rows.add(new ProductEventOutbox(pendingEvent.key(), pendingEvent.event().getEventType(),
+                        objectMapper.writeValueAsString(pendingEvent.event()), pendingEvent.description(),
+                        pendingEvent.attempt()));
+                persistable.add(pendingEvent);
+            } catch (JsonProcessingException e) {
+                drop(pendingEvent, "cannot be serialized for the outbox", e);
+            }
+        }
+        try {
+            outboxRepository.saveAll(rows);
+            outboxSize.addAndGet(rows.size());
+        } catch (Exception e) {
+            // Database lỗi: giữ trong buffer cho lượt sau, chỉ bỏ khi buffer đã đầy
+            log.warn("Failed to write {} product events to the outbox, keeping them in memory: {}",
+                    persistable.size(), e.getMessage());
+            for (PendingEvent pendingEvent : persistable) {
+                if (!retryBuffer.offer(pendingEvent)) {
+                    drop(pendingEvent, "retry buffer full and outbox unavailable", e);
+                }
+            }
+        }
+    }
+
+    private void relayOutbox() {
+        List<ProductEventOutbox> batch = outboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, retryBatchSize));
+        for (ProductEventOutbox row : batch) {
+            ProductEventDto event;
+            try {
+                event = objectMapper.readValue(row.getPayload(), ProductEventDto.class);
+            } catch (JsonProcessingException e) {
+                count(row.getEventType(), "dropped");
+                log.error("Dropping unreadable {} event {} from the outbox", row.getEventType(), row.getId(), e);
+                outboxRepository.delete(row);
+                continue;
+            }
+
+            try {
+                // Chờ kết quả (tối đa delivery.timeout.ms) để giữ thứ tự và dừng ngay khi Kafka còn lỗi
+                kafkaTemplate.send(productEventsTopic, row.getEventKey(), event).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | RuntimeException e) {
+                row.setAttempts(row.getAttempts() + 1);
+                outboxRepository.save(row);
+                count(row.getEventType(), "retried");
+                log.warn("Re-sending {} event for {} failed (attempt {}), keeping it in the outbox: {}",
+                        row.getEventType(), row.getDescription(), row.getAttempts(), e.getMessage());
+                break;
+            }
+            outboxRepository.delete(row);
+            count(row.getEventType(), "sent");
+        }
+        if (!batch.isEmpty()) {
+            outboxSize.set(outboxRepository.count());
+        }
+    }
+
+    /**
+     * Version của sự kiện: updatedAt tính bằng micro giây (độ chính xác của PostgreSQL).
+     * Sự kiện xóa dùng thời điểm hiện tại để luôn mới hơn lần cập nhật cuối cùng.
+     */
+    static long eventVersion(String eventType, ProductDto productDto) {
+        LocalDateTime timestamp = "PRODUCT_DELETED".equals(eventType) || productDto.getUpdatedAt() == null
+                ? LocalDateTime.now()
+                : productDto.getUpdatedAt();
+        return toMicros(timestamp);
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        Instant instant = timestamp.toInstant(ZoneOffset.UTC);
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000L;
+    }
+
     /**
      * Phương thức chung để phát sự kiện
      */
@@ -50,13 +266,81 @@ public class ProductEventPublisher {
                 .eventType(eventType)
                 .productId(productDto.getId().toString())
                 .payload(productDto)
+                .version(eventVersion(eventType, productDto))
                 .build();
 
+        publishAfterCommit(new PendingEvent(productDto.getId().toString(), event, "product " + productDto.getId()));
+    }
+
+    /**
+     * Trong transaction thì hoãn tới afterCommit, ngoài transaction thì gửi ngay
+     */
+    private void publishAfterCommit(PendingEvent pendingEvent) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(pendingEvent);
+                }
+            });
+        } else {
+            send(pendingEvent);
+        }
+    }
+
+    private void send(PendingEvent pendingEvent) {
+        String eventType = pendingEvent.event().getEventType();
         try {
-            kafkaTemplate.send(productEventsTopic, productDto.getId().toString(), event);
-            log.info("Published {} event for product: {}", eventType, productDto.getId());
+            kafkaTemplate.send(productEventsTopic, pendingEvent.key(), pendingEvent.event())
+                    .whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            count(eventType, "sent");
+                            log.debug("Published {} event for {}", eventType, pendingEvent.description());
+                        } else {
+                            onFailure(pendingEvent, ex);
+                        }
+                    });
         } catch (Exception e) {
-            log.error("Failed to publish {} event for product: {}", eventType, productDto.getId(), e);
+            // send() có thể ném lỗi đồng bộ, ví dụ khi không lấy được metadata hoặc buffer của producer đầy
+            onFailure(pendingEvent, e);
+        }
+    }
+
+    /**
+     * Chạy trên thread I/O của producer khi gửi lỗi: chỉ đưa vào buffer, scheduler ghi vào outbox
+     */
+    private void onFailure(PendingEvent pendingEvent, Throwable cause) {
+        String eventType = pendingEvent.event().getEventType();
+        if (!retryBuffer.offer(pendingEvent)) {
+            drop(pendingEvent, "retry buffer full", cause);
+            return;
+        }
+        count(eventType, "retried");
+        log.warn("Failed to publish {} event for {}, queued for the outbox: {}",
+                eventType, pendingEvent.description(), cause.getMessage());
+    }
+
+    private void drop(PendingEvent pendingEvent, String reason, Throwable cause) {
+        count(pendingEvent.event().getEventType(), "dropped");
+        log.error("Dropping {} event for {} ({}): {}", pendingEvent.event().getEventType(),
+                pendingEvent.description(), reason, pendingEvent.event(), cause);
+    }
+
+    private void count(String eventType, String result) {
+        counters.get(counterKey(eventType, result)).increment();
+    }
+
+    private static String counterKey(String eventType, String result) {
+        return eventType + ':' + result;
+    }
+
+    /**
+     * Sự kiện chờ gửi; key null cho sự kiện theo lô
+     */
+    private record PendingEvent(String key, ProductEventDto event, String description, int attempt) {
+
+        PendingEvent(String key, ProductEventDto event, String description) {
+            this(key, event, description, 1);
         }
     }
 } 
\ No newline at end of file
@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * DTO đại diện cho sự kiện liên quan đến sản phẩm
  * Được sử dụng để gửi sự kiện tới Kafka
@@ -18,4 +20,8 @@ public class ProductEventDto {
     private String eventType;
     private String productId;
     private ProductDto payload;
+    // Tăng dần theo thời gian cập nhật sản phẩm, search-service dùng làm external version khi ghi vào Elasticsearch
+    private Long version;
+    // Danh sách sản phẩm của sự kiện PRODUCT_BULK_UPDATED (mỗi sản phẩm tự mang updatedAt làm version)
+    private List<ProductDto> products;
 }
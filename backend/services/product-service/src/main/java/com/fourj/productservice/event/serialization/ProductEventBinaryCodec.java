@@ -0,0 +1,182 @@
+package com.fourj.productservice.event.serialization;
+
+import com.fourj.productservice.dto.ProductAttributeDto;
+import com.fourj.productservice.dto.ProductDto;
+import com.fourj.productservice.event.dto.ProductEventDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Định dạng nhị phân có version cho topic product-events (search-service có bộ decode tương ứng).
+ *
+ * <pre>
+ * event   := MAGIC(0xFE) FORMAT_VERSION(1|2) eventType:str flags:u8 [productId:str] [version:i64] [payload:product]
+ *            [products:count:varint product*]
+ *            flags: bit0 productId, bit1 version, bit2 payload, bit3 products (chỉ có ở version 2)
+ * product := fields:u16 active:u8 [id:i64] [name:str] [description:str] [price:decimal] [stockQuantity:i32]
+ *            [soldCount:i32] [imageUrl:str] [categoryId:i64] [categoryName:str] [sellerId:str]
+ *            [createdAt:i64] [updatedAt:i64] [attributes:attr*]
+ *            fields: bit i = có trường thứ i theo thứ tự trên (id = bit0 ... attributes = bit12)
+ * attr    := count:varint ( flags:u8 [id:i64] name:str value:str )*
+ * str     := length:varint utf8-bytes
+ * decimal := scale:i32 length:varint unscaled-two's-complement-bytes
+ * thời gian: epoch micro giây theo UTC của LocalDateTime
+ * </pre>
+ *
+ * Byte đầu 0xFE không bao giờ xuất hiện ở đầu một message JSON, nên consumer có thể nhận cả hai định dạng.
+ * Version 2 chỉ được dùng cho sự kiện có danh sách products, các sự kiện khác vẫn là version 1
+ * để consumer chưa nâng cấp vẫn đọc được.
+ */
+public final class ProductEventBinaryCodec {
+
+    public static final byte MAGIC = (byte) 0xFE;
+    public static final byte FORMAT_VERSION = 1;
+    public static final byte FORMAT_VERSION_PRODUCTS = 2;
+
+    private ProductEventBinaryCodec() {
+    }
+
+    public static byte[] encode(ProductEventDto event) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    event.getProducts() != null ? 256 * (event.getProducts().size() + 1) : 256);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            List<ProductDto> products = event.getProducts();
+            out.writeByte(MAGIC);
+            out.writeByte(products != null ? FORMAT_VERSION_PRODUCTS : FORMAT_VERSION);
+            writeString(out, event.getEventType());
+
+            int flags = (event.getProductId() != null ? 1 : 0)
+                    | (event.getVersion() != null ? 1 << 1 : 0)
+                    | (event.getPayload() != null ? 1 << 2 : 0)
+                    | (products != null ? 1 << 3 : 0);
+            out.writeByte(flags);
+            if (event.getProductId() != null) {
+                writeString(out, event.getProductId());
+            }
+            if (event.getVersion() != null) {
+                out.writeLong(event.getVersion());
+            }
+            if (event.getPayload() != null) {
+                writeProduct(out, event.getPayload());
+            }
+            if (products != null) {
+                writeVarInt(out, products.size());
+                for (ProductDto product : products) {
+                    writeProduct(out, product);
+                }
+            }
+
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream không ném IOException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void writeProduct(DataOutputStream out, ProductDto product) throws IOException {
+        List<ProductAttributeDto> attributes = product.getAttributes();
+        int fields = bit(0, product.getId())
+                | bit(1, product.getName())
+                | bit(2, product.getDescription())
+                | bit(3, product.getPrice())
+                | bit(4, product.getStockQuantity())
+                | bit(5, product.getSoldCount())
+                | bit(6, product.getImageUrl())
+                | bit(7, product.getCategoryId())
+                | bit(8, product.getCategoryName())
+                | bit(9, product.getSellerId())
+                | bit(10, product.getCreatedAt())
+                | bit(11, product.getUpdatedAt())
+                | bit(12, attributes);
+
+        out.writeShort(fields);
+        out.writeBoolean(product.isActive());
+        if (product.getId() != null) {
+            out.writeLong(product.getId());
+        }
+        if (product.getName() != null) {
+            writeString(out, product.getName());
+        }
+        if (product.getDescription() != null) {
+            writeString(out, product.getDescription());
+        }
+        if (product.getPrice() != null) {
+            writeDecimal(out, product.getPrice());
+        }
+        if (product.getStockQuantity() != null) {
+            out.writeInt(product.getStockQuantity());
+        }
+        if (product.getSoldCount() != null) {
+            out.writeInt(product.getSoldCount());
+        }
+        if (product.getImageUrl() != null) {
+            writeString(out, product.getImageUrl());
+        }
+        if (product.getCategoryId() != null) {
+            out.writeLong(product.getCategoryId());
+        }
+        if (product.getCategoryName() != null) {
+            writeString(out, product.getCategoryName());
+        }
+        if (product.getSellerId() != null) {
+            writeString(out, product.getSellerId());
+        }
+        if (product.getCreatedAt() != null) {
+            out.writeLong(toMicros(product.getCreatedAt()));
+        }
+        if (product.getUpdatedAt() != null) {
+            out.writeLong(toMicros(product.getUpdatedAt()));
+        }
+        if (attributes != null) {
+            writeVarInt(out, attributes.size());
+            for (ProductAttributeDto attribute : attributes) {
+                out.writeByte(attribute.getId() != null ? 1 : 0);
+                if (attribute.getId() != null) {
+                    out.writeLong(attribute.getId());
+                }
+                writeString(out, attribute.getName() != null ? attribute.getName() : "");
+                writeString(out, attribute.getValue() != null ? attribute.getValue() : "");
+            }
+        }
+    }
+
+    private static int bit(int index, Object value) {
+        return value != null ? 1 << index : 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        writeVarInt(out, unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000L;
+    }
+}
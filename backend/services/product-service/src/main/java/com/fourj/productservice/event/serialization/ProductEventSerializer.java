@@ -0,0 +1,15 @@
+package com.fourj.productservice.event.serialization;
+
+import com.fourj.productservice.event.dto.ProductEventDto;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Kafka serializer cho ProductEventDto theo định dạng nhị phân của {@link ProductEventBinaryCodec}
+ */
+public class ProductEventSerializer implements Serializer<ProductEventDto> {
+
+    @Override
+    public byte[] serialize(String topic, ProductEventDto event) {
+        return event == null ? null : ProductEventBinaryCodec.encode(event);
+    }
+}
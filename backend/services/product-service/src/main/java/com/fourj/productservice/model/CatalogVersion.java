@@ -0,0 +1,23 @@
+package com.fourj.productservice.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Bảng một dòng (id = 1) giữ version của danh sách sản phẩm, xem V5__catalog_version.sql
+ */
+@Entity
+@Table(name = "catalog_version")
+@Getter
+@Setter
+@NoArgsConstructor
+public class CatalogVersion {
+    @Id
+    private Long id;
+
+    private long version;
+}
@@ -42,12 +42,17 @@ public class Product {
     @JoinColumn(name = "category_id")
     private Category category;
 
-    @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    // Thuộc tính bị bỏ khỏi tập hợp sẽ bị xóa khi flush
+    @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     private Set<ProductAttribute> attributes = new HashSet<>();
 
     @Column(nullable = false)
     private boolean active = true;
 
+    // Tổng số lượng đã bán, tăng dần mỗi khi đơn hàng hoàn tất trừ tồn kho
+    @Column(name = "sold_count")
+    private Integer soldCount = 0;
+
     @Column(name = "seller_id")
     private String sellerId = "default_seller";
 
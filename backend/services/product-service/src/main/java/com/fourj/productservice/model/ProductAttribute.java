@@ -36,11 +36,13 @@ public class ProductAttribute {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProductAttribute that = (ProductAttribute) o;
-        return Objects.equals(id, that.id);
+        // Thuộc tính chưa lưu (id null) chỉ bằng chính nó, để nhiều thuộc tính mới cùng nằm được trong Set
+        return id != null && Objects.equals(id, that.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        // Không phụ thuộc id, để hash không đổi khi id được gán lúc insert
+        return getClass().hashCode();
     }
 }
\ No newline at end of file
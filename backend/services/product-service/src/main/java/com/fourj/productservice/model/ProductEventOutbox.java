@@ -0,0 +1,58 @@
+package com.fourj.productservice.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện Kafka chờ gửi lại, payload là ProductEventDto dạng JSON; xem V6__product_event_outbox.sql
+ */
+@Entity
+@Table(name = "product_event_outbox")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProductEventOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Key của message Kafka; null với sự kiện theo lô
+    @Column(name = "event_key")
+    private String eventKey;
+
+    @Column(name = "event_type", nullable = false)
+    private String eventType;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    private String description;
+
+    private int attempts;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public ProductEventOutbox(String eventKey, String eventType, String payload, String description, int attempts) {
+        this.eventKey = eventKey;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.description = description;
+        this.attempts = attempts;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
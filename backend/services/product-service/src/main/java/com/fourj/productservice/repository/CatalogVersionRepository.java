@@ -0,0 +1,19 @@
+package com.fourj.productservice.repository;
+
+import com.fourj.productservice.model.CatalogVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CatalogVersionRepository extends JpaRepository<CatalogVersion, Long> {
+
+    @Query("select c.version from CatalogVersion c where c.id = 1")
+    long current();
+
+    // Gọi trong transaction ghi sản phẩm: version mới chỉ hiện ra khi thay đổi đã commit
+    @Modifying
+    @Query("update CatalogVersion c set c.version = c.version + 1 where c.id = 1")
+    int increment();
+}
@@ -0,0 +1,15 @@
+package com.fourj.productservice.repository;
+
+import com.fourj.productservice.model.ProductEventOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ProductEventOutboxRepository extends JpaRepository<ProductEventOutbox, Long> {
+
+    // Gửi lại theo thứ tự ghi vào outbox
+    List<ProductEventOutbox> findAllByOrderByIdAsc(Pageable pageable);
+}
@@ -1,17 +1,26 @@
 package com.fourj.productservice.repository;
 
+import com.fourj.productservice.dto.ProductVersion;
 import com.fourj.productservice.model.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     Page<Product> findByActiveTrue(Pageable pageable);
     Page<Product> findByCategoryIdAndActiveTrue(Long categoryId, Pageable pageable);
+    // upper(name) LIKE '%...%' dùng trigram index idx_products_name_trgm (V3 migration)
     Page<Product> findByNameContainingIgnoreCaseAndActiveTrue(String name, Pageable pageable);
     
     // Thêm các phương thức mới để tìm theo sellerId
@@ -25,4 +34,25 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     
     // Phương thức tìm tất cả sản phẩm cả kích hoạt và không kích hoạt
     Page<Product> findAll(Pageable pageable);
-}
\ No newline at end of file
+    
+    // Keyset pagination cho export: lấy id theo thứ tự tăng dần sau id cuối của trang trước
+    @Query("select p.id from Product p where p.sellerId = :sellerId and p.id > :afterId order by p.id")
+    List<Long> findIdsBySellerIdAfter(@Param("sellerId") String sellerId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    // Nạp sản phẩm kèm danh mục và thuộc tính trong một truy vấn
+    @EntityGraph(attributePaths = {"category", "attributes"})
+    List<Product> findByIdInOrderByIdAsc(Collection<Long> ids);
+    
+    // Validator cho conditional GET của một sản phẩm: không nạp entity và thuộc tính
+    @Query("select new com.fourj.productservice.dto.ProductVersion(p.id, p.updatedAt, c.name) "
+            + "from Product p left join p.category c where p.id = :id")
+    Optional<ProductVersion> findVersionById(@Param("id") Long id);
+    
+    // Bán hàng: trừ tồn kho và cộng soldCount chỉ khi đủ hàng, trả về 0 nếu không đủ hoặc không có sản phẩm
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Product p set p.stockQuantity = p.stockQuantity - :quantity, "
+            + "p.soldCount = coalesce(p.soldCount, 0) + :quantity, p.updatedAt = :updatedAt "
+            + "where p.id = :id and p.stockQuantity >= :quantity")
+    int decrementStock(@Param("id") Long id, @Param("quantity") int quantity,
+                       @Param("updatedAt") LocalDateTime updatedAt);
+}
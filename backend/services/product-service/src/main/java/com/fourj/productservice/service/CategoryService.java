@@ -2,6 +2,7 @@ package com.fourj.productservice.service;
 
 import com.fourj.productservice.dto.CategoryCreateDto;
 import com.fourj.productservice.dto.CategoryDto;
+import com.fourj.productservice.dto.CategorySnapshot;
 import com.fourj.productservice.model.Category;
 
 import java.util.List;
@@ -10,6 +11,8 @@ public interface CategoryService {
     CategoryDto createCategory(CategoryCreateDto categoryCreateDto);
     CategoryDto getCategoryById(Long id);
     List<CategoryDto> getAllCategories();
+    // Toàn bộ danh mục kèm ETag, dùng cho GET có điều kiện
+    CategorySnapshot getCategorySnapshot();
     CategoryDto updateCategory(Long id, CategoryCreateDto categoryUpdateDto);
     void deleteCategory(Long id);
 }
\ No newline at end of file
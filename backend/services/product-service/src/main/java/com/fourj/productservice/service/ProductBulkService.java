@@ -0,0 +1,16 @@
+package com.fourj.productservice.service;
+
+import com.fourj.productservice.dto.BulkImportResultDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface ProductBulkService {
+
+    enum Format { CSV, NDJSON }
+
+    BulkImportResultDto importProducts(String sellerId, Format format, InputStream input) throws IOException;
+
+    void exportProducts(String sellerId, Format format, OutputStream output) throws IOException;
+}
@@ -1,8 +1,10 @@
 package com.fourj.productservice.service;
 
+import com.fourj.productservice.dto.ListingVersion;
 import com.fourj.productservice.dto.ProductCreateDto;
 import com.fourj.productservice.dto.ProductDto;
 import com.fourj.productservice.dto.ProductUpdateDto;
+import com.fourj.productservice.dto.ProductVersion;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -12,6 +14,8 @@ public interface ProductService {
     Page<ProductDto> getAllProducts(Pageable pageable);
     Page<ProductDto> getProductsByCategory(Long categoryId, Pageable pageable);
     Page<ProductDto> searchProducts(String keyword, Pageable pageable);
+    ProductVersion getProductVersion(Long id);
+    ListingVersion getListingVersion();
     ProductDto updateProduct(Long id, ProductUpdateDto productUpdateDto);
     void deleteProduct(Long id);
     
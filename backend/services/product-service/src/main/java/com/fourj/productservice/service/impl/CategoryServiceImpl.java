@@ -1,26 +1,37 @@
 package com.fourj.productservice.service.impl;
 
+import com.fourj.productservice.config.CacheConfig;
 import com.fourj.productservice.dto.CategoryCreateDto;
 import com.fourj.productservice.dto.CategoryDto;
+import com.fourj.productservice.dto.CategorySnapshot;
+import com.fourj.productservice.event.CategoriesChangedEvent;
 import com.fourj.productservice.exception.ResourceNotFoundException;
 import com.fourj.productservice.model.Category;
 import com.fourj.productservice.repository.CategoryRepository;
 import com.fourj.productservice.service.CategoryService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class CategoryServiceImpl implements CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final CategorySnapshotHolder categorySnapshotHolder;
+    private final ApplicationEventPublisher applicationEventPublisher;
 
     @Autowired
-    public CategoryServiceImpl(CategoryRepository categoryRepository) {
+    public CategoryServiceImpl(CategoryRepository categoryRepository,
+                               CategorySnapshotHolder categorySnapshotHolder,
+                               ApplicationEventPublisher applicationEventPublisher) {
         this.categoryRepository = categoryRepository;
+        this.categorySnapshotHolder = categorySnapshotHolder;
+        this.applicationEventPublisher = applicationEventPublisher;
     }
 
     @Override
@@ -31,11 +42,17 @@ public class CategoryServiceImpl implements CategoryService {
         category.setDescription(categoryCreateDto.getDescription());
 
         Category savedCategory = categoryRepository.save(category);
+        applicationEventPublisher.publishEvent(new CategoriesChangedEvent(savedCategory.getId()));
         return mapToDto(savedCategory);
     }
 
     @Override
     public CategoryDto getCategoryById(Long id) {
+        CategoryDto cached = categorySnapshotHolder.current().byId().get(id);
+        if (cached != null) {
+            return cached;
+        }
+        // Có thể là danh mục vừa được tạo ở replica khác mà broadcast chưa tới
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Danh mục không tồn tại với id: " + id));
         return mapToDto(category);
@@ -43,13 +60,20 @@ public class CategoryServiceImpl implements CategoryService {
 
     @Override
     public List<CategoryDto> getAllCategories() {
-        return categoryRepository.findAll().stream()
-                .map(this::mapToDto)
-                .collect(Collectors.toList());
+        return categorySnapshotHolder.current().categories();
+    }
+
+    @Override
+    public CategorySnapshot getCategorySnapshot() {
+        return categorySnapshotHolder.current();
     }
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.CATEGORY_PRODUCTS, allEntries = true)
+    })
     public CategoryDto updateCategory(Long id, CategoryCreateDto categoryUpdateDto) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Danh mục không tồn tại với id: " + id));
@@ -57,26 +81,27 @@ public class CategoryServiceImpl implements CategoryService {
         category.setName(categoryUpdateDto.getName());
         category.setDescription(categoryUpdateDto.getDescription());
 
-        Category updatedCategory = categoryRepository.save(category);
+        // Flush để updatedAt mới có trong DTO trả về và trong snapshot nạp lại sau commit
+        Category updatedCategory = categoryRepository.saveAndFlush(category);
+        applicationEventPublisher.publishEvent(new CategoriesChangedEvent(id));
         return mapToDto(updatedCategory);
     }
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, allEntries = true),
+            @CacheEvict(cacheNames = CacheConfig.CATEGORY_PRODUCTS, allEntries = true)
+    })
     public void deleteCategory(Long id) {
         if (!categoryRepository.existsById(id)) {
             throw new ResourceNotFoundException("Danh mục không tồn tại với id: " + id);
         }
         categoryRepository.deleteById(id);
+        applicationEventPublisher.publishEvent(new CategoriesChangedEvent(id));
     }
 
     private CategoryDto mapToDto(Category category) {
-        return CategoryDto.builder()
-                .id(category.getId())
-                .name(category.getName())
-                .description(category.getDescription())
-                .createdAt(category.getCreatedAt())
-                .updatedAt(category.getUpdatedAt())
-                .build();
+        return CategorySnapshotHolder.mapToDto(category);
     }
 }
\ No newline at end of file
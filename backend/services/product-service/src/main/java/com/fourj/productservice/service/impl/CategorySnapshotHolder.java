@@ -0,0 +1,101 @@
+package com.fourj.productservice.service.impl;
+
+import com.fourj.productservice.dto.CategoryDto;
+import com.fourj.productservice.dto.CategorySnapshot;
+import com.fourj.productservice.event.CategoriesChangedEvent;
+import com.fourj.productservice.model.Category;
+import com.fourj.productservice.repository.CategoryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Giữ CategorySnapshot hiện tại. Đọc không khóa (một lần đọc AtomicReference);
+ * snapshot được nạp lại sau khi transaction thay đổi danh mục commit, khi replica khác báo thay đổi
+ * (CategoryEventBroadcaster), hoặc khi quá max-age để tự phục hồi nếu lỡ mất một broadcast.
+ * Nạp lại do quá max-age chạy nền; request vẫn nhận snapshot hiện có thay vì chờ truy vấn database.
+ */
+@Component
+@Slf4j
+public class CategorySnapshotHolder {
+
+    private final CategoryRepository categoryRepository;
+    private final Duration maxAge;
+    private final AtomicReference<CategorySnapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "category-snapshot-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public CategorySnapshotHolder(CategoryRepository categoryRepository,
+                                  @Value("${categories.snapshot.max-age-seconds:300}") long maxAgeSeconds) {
+        this.categoryRepository = categoryRepository;
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+    }
+
+    public CategorySnapshot current() {
+        CategorySnapshot current = snapshot.get();
+        if (current == null) {
+            return refresh();
+        }
+        // Snapshot quá cũ: nạp lại nền (tối đa một lần nạp cùng lúc), request vẫn dùng snapshot hiện có
+        if (current.loadedAt().plus(maxAge).isBefore(Instant.now()) && refreshing.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    log.warn("Background category snapshot refresh failed: {}", e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return current;
+    }
+
+    public CategorySnapshot refresh() {
+        CategorySnapshot loaded = CategorySnapshot.of(categoryRepository.findAll().stream()
+                .map(CategorySnapshotHolder::mapToDto)
+                .toList());
+        snapshot.set(loaded);
+        log.debug("Loaded category snapshot: {} categories, etag {}", loaded.categories().size(), loaded.etag());
+        return loaded;
+    }
+
+    /**
+     * Nạp lại sau khi commit để snapshot không bao giờ chứa dữ liệu chưa commit
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCategoriesChanged(CategoriesChangedEvent event) {
+        refresh();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    static CategoryDto mapToDto(Category category) {
+        return CategoryDto.builder()
+                .id(category.getId())
+                .name(category.getName())
+                .description(category.getDescription())
+                .createdAt(category.getCreatedAt())
+                .updatedAt(category.getUpdatedAt())
+                .build();
+    }
+}
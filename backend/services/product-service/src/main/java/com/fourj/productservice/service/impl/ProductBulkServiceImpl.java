@@ -0,0 +1,482 @@
+package com.fourj.productservice.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fourj.productservice.config.CacheConfig;
+import com.fourj.productservice.dto.BulkImportResultDto;
+import com.fourj.productservice.dto.ProductAttributeDto;
+import com.fourj.productservice.dto.ProductCreateDto;
+import com.fourj.productservice.dto.ProductDto;
+import com.fourj.productservice.event.ProductEventPublisher;
+import com.fourj.productservice.model.Category;
+import com.fourj.productservice.model.Product;
+import com.fourj.productservice.repository.CatalogVersionRepository;
+import com.fourj.productservice.repository.CategoryRepository;
+import com.fourj.productservice.repository.ProductRepository;
+import com.fourj.productservice.service.ProductBulkService;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Nhập/xuất sản phẩm hàng loạt cho seller.
+ * Input được đọc theo luồng và ghi theo từng chunk: mỗi chunk là một transaction và một sự kiện
+ * PRODUCT_BULK_UPDATED, nên file lớn không phải nạp hết vào bộ nhớ và search-service index cả chunk một lần.
+ * Dòng có id cập nhật sản phẩm đã có của chính seller đó, dòng không có id tạo sản phẩm mới,
+ * nên file export có thể nhập lại mà không nhân đôi danh mục sản phẩm.
+ * Dòng không hợp lệ bị bỏ qua và được báo lỗi theo số dòng, các dòng khác vẫn được nhập.
+ */
+@Service
+@Slf4j
+public class ProductBulkServiceImpl implements ProductBulkService {
+
+    static final List<String> CSV_COLUMNS = List.of(
+            "id", "name", "description", "price", "stockQuantity", "soldCount",
+            "imageUrl", "categoryId", "active", "attributes");
+    private static final TypeReference<LinkedHashMap<String, String>> ATTRIBUTE_MAP = new TypeReference<>() {
+    };
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final CatalogVersionRepository catalogVersionRepository;
+    private final ProductEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final CacheManager cacheManager;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Value("${products.bulk.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${products.bulk.max-rows:50000}")
+    private int maxRows;
+
+    @Autowired
+    public ProductBulkServiceImpl(ProductRepository productRepository,
+                                  CategoryRepository categoryRepository,
+                                  CatalogVersionRepository catalogVersionRepository,
+                                  ProductEventPublisher eventPublisher,
+                                  ObjectMapper objectMapper,
+                                  Validator validator,
+                                  CacheManager cacheManager,
+                                  PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+        this.catalogVersionRepository = catalogVersionRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.cacheManager = cacheManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @Override
+    public BulkImportResultDto importProducts(String sellerId, Format format, InputStream input) throws IOException {
+        BulkImportResultDto result = new BulkImportResultDto();
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        long rows = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        RowSource source = format == Format.CSV ? csvRows(reader) : ndjsonRows(reader);
+
+        ImportRow row;
+        while ((row = source.next()) != null) {
+            if (++rows > maxRows) {
+                addError(result, row.line(), "Vượt quá số dòng tối đa cho một lần nhập: " + maxRows);
+                break;
+            }
+            if (row.error() != null) {
+                addError(result, row.line(), row.error());
+                continue;
+            }
+
+            String violation = validate(row.product());
+            if (violation != null) {
+                addError(result, row.line(), violation);
+                continue;
+            }
+
+            row.product().setSellerId(sellerId);
+            chunk.add(row);
+            if (chunk.size() >= chunkSize) {
+                importChunk(sellerId, chunk, result);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(sellerId, chunk, result);
+        }
+
+        log.info("Seller {} bulk import finished: {} imported, {} failed", sellerId, result.getImported(), result.getFailed());
+        return result;
+    }
+
+    /**
+     * Ghi một chunk trong một transaction rồi xóa cache và phát một sự kiện cho cả chunk sau khi commit.
+     * Cache được xóa theo từng chunk vì chunk đã commit vẫn giữ nguyên khi chunk sau lỗi.
+     */
+    private void importChunk(String sellerId, List<ImportRow> rows, BulkImportResultDto result) {
+        List<ImportRow> missingCategory = new ArrayList<>();
+        List<ImportRow> missingProduct = new ArrayList<>();
+        List<ProductDto> imported;
+        try {
+            imported = transactionTemplate.execute(status -> {
+                Set<Long> categoryIds = rows.stream()
+                        .map(row -> row.product().getCategoryId())
+                        .collect(Collectors.toSet());
+                Map<Long, Category> categories = categoryRepository.findAllById(categoryIds).stream()
+                        .collect(Collectors.toMap(Category::getId, Function.identity()));
+
+                // Sản phẩm cần cập nhật: chỉ nhận sản phẩm của chính seller này
+                List<Long> productIds = rows.stream()
+                        .map(ImportRow::id)
+                        .filter(Objects::nonNull)
+                        .distinct()
+                        .collect(Collectors.toList());
+                Map<Long, Product> existing = productIds.isEmpty() ? Map.of()
+                        : productRepository.findByIdInOrderByIdAsc(productIds).stream()
+                                .filter(product -> sellerId.equals(product.getSellerId()))
+                                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+                List<Product> products = new ArrayList<>(rows.size());
+                Set<Long> updatedIds = new HashSet<>();
+                for (ImportRow row : rows) {
+                    Category category = categories.get(row.product().getCategoryId());
+                    if (category == null) {
+                        missingCategory.add(row);
+                        continue;
+                    }
+                    if (row.id() == null) {
+                        products.add(applyRow(new Product(), row, category));
+                    } else if (existing.containsKey(row.id())) {
+                        // Cùng id xuất hiện nhiều lần trong chunk: dòng sau ghi đè dòng trước trên cùng entity
+                        Product product = applyRow(existing.get(row.id()), row, category);
+                        if (updatedIds.add(row.id())) {
+                            products.add(product);
+                        }
+                    } else {
+                        missingProduct.add(row);
+                    }
+                }
+
+                productRepository.saveAll(products);
+                productRepository.flush();
+                if (!products.isEmpty()) {
+                    catalogVersionRepository.increment();
+                }
+                return products.stream().map(ProductServiceImpl::mapToDto).collect(Collectors.toList());
+            });
+        } catch (Exception e) {
+            log.error("Bulk import chunk of {} rows failed", rows.size(), e);
+            rows.forEach(row -> addError(result, row.line(), "Không thể lưu sản phẩm: " + e.getMessage()));
+            return;
+        }
+
+        missingCategory.forEach(row -> addError(result, row.line(),
+                "Danh mục không tồn tại với id: " + row.product().getCategoryId()));
+        missingProduct.forEach(row -> addError(result, row.line(),
+                "Không tìm thấy sản phẩm của seller với id: " + row.id()));
+        result.setImported(result.getImported() + imported.size());
+        evictCaches(imported);
+        eventPublisher.publishBulkUpdated(imported);
+    }
+
+    private void evictCaches(List<ProductDto> imported) {
+        if (imported.isEmpty()) {
+            return;
+        }
+        Cache products = cacheManager.getCache(CacheConfig.PRODUCTS);
+        if (products != null) {
+            imported.forEach(product -> products.evict(product.getId()));
+        }
+        Cache categoryProducts = cacheManager.getCache(CacheConfig.CATEGORY_PRODUCTS);
+        if (categoryProducts != null) {
+            categoryProducts.clear();
+        }
+    }
+
+    /**
+     * Ghi giá trị của dòng vào sản phẩm mới hoặc sản phẩm đã có. Cột active để trống thì sản phẩm mới
+     * được bật, sản phẩm đã có giữ nguyên trạng thái; thuộc tính chỉ thay đổi khi dòng có cột attributes.
+     */
+    private static Product applyRow(Product product, ImportRow row, Category category) {
+        ProductCreateDto dto = row.product();
+        product.setName(dto.getName());
+        product.setDescription(dto.getDescription());
+        product.setPrice(dto.getPrice());
+        product.setStockQuantity(dto.getStockQuantity());
+        product.setImageUrl(dto.getImageUrl());
+        product.setCategory(category);
+        product.setSellerId(dto.getSellerId());
+        if (row.active() != null) {
+            product.setActive(row.active());
+        } else if (product.getId() == null) {
+            product.setActive(true);
+        }
+        if (dto.getAttributes() != null) {
+            ProductServiceImpl.applyAttributes(product, dto.getAttributes());
+        }
+        return product;
+    }
+
+    private String validate(ProductCreateDto dto) {
+        Set<ConstraintViolation<ProductCreateDto>> violations = validator.validate(dto);
+        if (violations.isEmpty()) {
+            boolean invalidAttribute = dto.getAttributes() != null && dto.getAttributes().stream()
+                    .anyMatch(attribute -> !StringUtils.hasText(attribute.getName()) || attribute.getValue() == null);
+            return invalidAttribute ? "attributes: Tên và giá trị thuộc tính không được để trống" : null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static void addError(BulkImportResultDto result, long line, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new BulkImportResultDto.RowError(line, message));
+        }
+    }
+
+    /**
+     * Mỗi dòng là một ProductCreateDto dạng JSON, có thể kèm "id" và "active" như file export
+     */
+    private RowSource ndjsonRows(BufferedReader reader) {
+        long[] line = {0};
+        return () -> {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line[0]++;
+                if (!text.isBlank()) {
+                    try {
+                        JsonNode node = objectMapper.readTree(text);
+                        if (!node.isObject()) {
+                            return ImportRow.error(line[0], "Mỗi dòng phải là một JSON object");
+                        }
+                        Long id = node.hasNonNull("id") ? node.get("id").asLong() : null;
+                        Boolean active = node.hasNonNull("active") ? node.get("active").asBoolean() : null;
+                        return new ImportRow(line[0], id, active, objectMapper.treeToValue(node, ProductCreateDto.class), null);
+                    } catch (JsonProcessingException e) {
+                        return ImportRow.error(line[0], "JSON không hợp lệ: " + e.getOriginalMessage());
+                    }
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Dòng đầu là header; các cột được nhận theo tên, cột chỉ dùng khi xuất (soldCount) bị bỏ qua.
+     * Cột id (nếu có giá trị) chọn sản phẩm cần cập nhật, cột active bật/tắt sản phẩm.
+     * Cột attributes là JSON object {"tên": "giá trị"}.
+     */
+    private RowSource csvRows(BufferedReader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return () -> null;
+        }
+
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // Bỏ BOM mà Excel thêm vào đầu file UTF-8
+            String name = i == 0 ? header.get(i).replace("\uFEFF", "") : header.get(i);
+            columns.put(name.trim(), i);
+        }
+
+        return () -> {
+            List<String> fields = csv.next();
+            if (fields == null) {
+                return null;
+            }
+            try {
+                String id = field(fields, columns, "id");
+                String active = field(fields, columns, "active");
+                return new ImportRow(csv.recordLine(),
+                        id != null ? parseId(id) : null,
+                        active != null ? parseBoolean(active) : null,
+                        toCreateDto(fields, columns),
+                        null);
+            } catch (IllegalArgumentException e) {
+                return ImportRow.error(csv.recordLine(), e.getMessage());
+            }
+        };
+    }
+
+    private ProductCreateDto toCreateDto(List<String> fields, Map<String, Integer> columns) {
+        ProductCreateDto dto = new ProductCreateDto();
+        dto.setName(field(fields, columns, "name"));
+        dto.setDescription(field(fields, columns, "description"));
+        dto.setImageUrl(field(fields, columns, "imageUrl"));
+
+        String price = field(fields, columns, "price");
+        String stockQuantity = field(fields, columns, "stockQuantity");
+        String categoryId = field(fields, columns, "categoryId");
+        try {
+            dto.setPrice(price != null ? new BigDecimal(price) : null);
+            dto.setStockQuantity(stockQuantity != null ? Integer.valueOf(stockQuantity) : null);
+            dto.setCategoryId(categoryId != null ? Long.valueOf(categoryId) : null);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Giá trị số không hợp lệ (price, stockQuantity, categoryId)");
+        }
+
+        String attributes = field(fields, columns, "attributes");
+        if (attributes != null) {
+            try {
+                dto.setAttributes(objectMapper.readValue(attributes, ATTRIBUTE_MAP).entrySet().stream()
+                        .map(entry -> new ProductAttributeDto(null, entry.getKey(), entry.getValue()))
+                        .collect(Collectors.toList()));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Cột attributes phải là JSON object {\"tên\": \"giá trị\"}");
+            }
+        }
+        return dto;
+    }
+
+    private static Long parseId(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Giá trị id không hợp lệ: " + value);
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Giá trị active phải là true hoặc false: " + value);
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return StringUtils.hasText(value) ? value : null;
+    }
+
+    /**
+     * Xuất toàn bộ sản phẩm của seller theo từng trang (keyset theo id), mỗi trang một truy vấn id
+     * và một truy vấn nạp chi tiết, dữ liệu được ghi thẳng ra response
+     */
+    @Override
+    public void exportProducts(String sellerId, Format format, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (format == Format.CSV) {
+            writer.write(String.join(",", CSV_COLUMNS));
+            writer.write('\n');
+        }
+
+        long afterId = 0;
+        while (true) {
+            long lastId = afterId;
+            List<ProductDto> page = readOnlyTransactionTemplate.execute(status -> {
+                List<Long> ids = productRepository.findIdsBySellerIdAfter(sellerId, lastId, PageRequest.of(0, chunkSize));
+                if (ids.isEmpty()) {
+                    return List.<ProductDto>of();
+                }
+                return productRepository.findByIdInOrderByIdAsc(ids).stream()
+                        .map(ProductServiceImpl::mapToDto)
+                        .collect(Collectors.toList());
+            });
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+
+            for (ProductDto product : page) {
+                if (format == Format.CSV) {
+                    writeCsv(writer, product);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(product));
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+            afterId = page.get(page.size() - 1).getId();
+        }
+        writer.flush();
+    }
+
+    private void writeCsv(Writer writer, ProductDto product) throws IOException {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        if (product.getAttributes() != null) {
+            product.getAttributes().forEach(attribute -> attributes.put(attribute.getName(), attribute.getValue()));
+        }
+
+        List<String> values = List.of(
+                String.valueOf(product.getId()),
+                nullToEmpty(product.getName()),
+                nullToEmpty(product.getDescription()),
+                product.getPrice() != null ? product.getPrice().toPlainString() : "",
+                product.getStockQuantity() != null ? product.getStockQuantity().toString() : "",
+                product.getSoldCount() != null ? product.getSoldCount().toString() : "",
+                nullToEmpty(product.getImageUrl()),
+                product.getCategoryId() != null ? product.getCategoryId().toString() : "",
+                String.valueOf(product.isActive()),
+                attributes.isEmpty() ? "" : objectMapper.writeValueAsString(attributes));
+
+        writer.write(values.stream().map(CsvReader::escape).collect(Collectors.joining(",")));
+        writer.write('\n');
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Một dòng input: sản phẩm đã parse (id null = tạo mới, active null = không đổi) hoặc lỗi parse
+     */
+    private record ImportRow(long line, Long id, Boolean active, ProductCreateDto product, String error) {
+
+        static ImportRow error(long line, String error) {
+            return new ImportRow(line, null, null, null, error);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowSource {
+        ImportRow next() throws IOException;
+    }
+}
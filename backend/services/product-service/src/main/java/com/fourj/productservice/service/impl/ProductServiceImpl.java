@@ -1,29 +1,38 @@
 package com.fourj.productservice.service.impl;
 
+import com.fourj.productservice.config.CacheConfig;
+import com.fourj.productservice.dto.ListingVersion;
 import com.fourj.productservice.dto.ProductAttributeDto;
 import com.fourj.productservice.dto.ProductCreateDto;
 import com.fourj.productservice.dto.ProductDto;
 import com.fourj.productservice.dto.ProductUpdateDto;
+import com.fourj.productservice.dto.ProductVersion;
 import com.fourj.productservice.event.ProductEventPublisher;
 import com.fourj.productservice.exception.ResourceNotFoundException;
 import com.fourj.productservice.exception.UnauthorizedAccessException;
 import com.fourj.productservice.model.Category;
 import com.fourj.productservice.model.Product;
 import com.fourj.productservice.model.ProductAttribute;
+import com.fourj.productservice.repository.CatalogVersionRepository;
 import com.fourj.productservice.repository.CategoryRepository;
-import com.fourj.productservice.repository.ProductAttributeRepository;
 import com.fourj.productservice.repository.ProductRepository;
 import com.fourj.productservice.service.ProductService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -33,22 +42,26 @@ public class ProductServiceImpl implements ProductService {
 
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
-    private final ProductAttributeRepository attributeRepository;
     private final ProductEventPublisher eventPublisher;
+    private final CategorySnapshotHolder categorySnapshotHolder;
+    private final CatalogVersionRepository catalogVersionRepository;
 
     @Autowired
     public ProductServiceImpl(ProductRepository productRepository,
                               CategoryRepository categoryRepository,
-                              ProductAttributeRepository attributeRepository,
-                              ProductEventPublisher eventPublisher) {
+                              ProductEventPublisher eventPublisher,
+                              CategorySnapshotHolder categorySnapshotHolder,
+                              CatalogVersionRepository catalogVersionRepository) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
-        this.attributeRepository = attributeRepository;
         this.eventPublisher = eventPublisher;
+        this.categorySnapshotHolder = categorySnapshotHolder;
+        this.catalogVersionRepository = catalogVersionRepository;
     }
 
     @Override
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.CATEGORY_PRODUCTS, allEntries = true)
     public ProductDto createProduct(ProductCreateDto productCreateDto) {
         Category category = categoryRepository.findById(productCreateDto.getCategoryId())
                 .orElseThrow(() -> new ResourceNotFoundException("Danh mục không tồn tại với id: " + productCreateDto.getCategoryId()));
@@ -67,20 +80,14 @@ public class ProductServiceImpl implements ProductService {
             product.setSellerId(productCreateDto.getSellerId());
         }
 
-        Product savedProduct = productRepository.save(product);
-
-        // Lưu các thuộc tính sản phẩm
-        if (productCreateDto.getAttributes() != null && !productCreateDto.getAttributes().isEmpty()) {
-            for (ProductAttributeDto attributeDto : productCreateDto.getAttributes()) {
-                ProductAttribute attribute = new ProductAttribute();
-                attribute.setProduct(savedProduct);
-                attribute.setName(attributeDto.getName());
-                attribute.setValue(attributeDto.getValue());
-                attributeRepository.save(attribute);
-            }
+        // Thuộc tính được lưu cùng sản phẩm qua cascade, không cần đọc lại sản phẩm sau khi lưu
+        if (productCreateDto.getAttributes() != null) {
+            applyAttributes(product, productCreateDto.getAttributes());
         }
 
-        ProductDto productDto = mapToDto(productRepository.findById(savedProduct.getId()).orElseThrow());
+        Product savedProduct = productRepository.save(product);
+        catalogVersionRepository.increment();
+        ProductDto productDto = mapToDto(savedProduct);
         
         // Phát sự kiện sản phẩm được tạo
         try {
@@ -95,6 +102,7 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
+    @Cacheable(cacheNames = CacheConfig.PRODUCTS, key = "#id")
     public ProductDto getProductById(Long id) {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + id));
@@ -104,29 +112,51 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public Page<ProductDto> getAllProducts(Pageable pageable) {
         return productRepository.findByActiveTrue(pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
+    @Cacheable(cacheNames = CacheConfig.CATEGORY_PRODUCTS, key = "#categoryId + ':' + #pageable")
     public Page<ProductDto> getProductsByCategory(Long categoryId, Pageable pageable) {
-        if (!categoryRepository.existsById(categoryId)) {
+        if (!categoryExists(categoryId)) {
             throw new ResourceNotFoundException("Danh mục không tồn tại với id: " + categoryId);
         }
         return productRepository.findByCategoryIdAndActiveTrue(categoryId, pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
     public Page<ProductDto> searchProducts(String keyword, Pageable pageable) {
         return productRepository.findByNameContainingIgnoreCaseAndActiveTrue(keyword, pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
+    }
+
+    @Override
+    public ProductVersion getProductVersion(Long id) {
+        return productRepository.findVersionById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + id));
+    }
+
+    /**
+     * Version của catalog chỉ tăng khi thay đổi hiển thị trên listing; đổi tồn kho không làm tăng version
+     * trừ khi sản phẩm hết hàng hoặc có hàng trở lại, nên stockQuantity/soldCount trong listing đã cache ở client
+     * có thể cũ hơn trang chi tiết (ETag của GET /{id} luôn theo updatedAt).
+     */
+    @Override
+    public ListingVersion getListingVersion() {
+        return new ListingVersion(catalogVersionRepository.current(), categorySnapshotHolder.current().etag());
     }
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.CATEGORY_PRODUCTS, allEntries = true)
+    })
     public ProductDto updateProduct(Long id, ProductUpdateDto productUpdateDto) {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + id));
+        boolean wasInStock = isInStock(product);
 
         if (productUpdateDto.getName() != null) {
             product.setName(productUpdateDto.getName());
@@ -152,44 +182,31 @@ public class ProductServiceImpl implements ProductService {
             product.setActive(productUpdateDto.getActive());
         }
 
-        // Lưu sản phẩm trước khi xử lý thuộc tính để tránh ConcurrentModificationException
-        Product updatedProduct = productRepository.save(product);
-
-        // Cập nhật thuộc tính nếu được cung cấp
+        // Cập nhật thuộc tính nếu được cung cấp: chỉ ghi phần thay đổi so với thuộc tính hiện có
         if (productUpdateDto.getAttributes() != null) {
-            // Lấy danh sách thuộc tính cũ để xóa sau
-            List<ProductAttribute> oldAttributes = attributeRepository.findByProductId(product.getId());
-            
-            // Xóa tất cả các thuộc tính cũ khỏi product.attributes 
-            // để tránh ConcurrentModificationException
-            product.setAttributes(new HashSet<>());
-            
-            // Lưu product với danh sách thuộc tính trống
-            productRepository.save(product);
-            
-            // Xóa các thuộc tính cũ trong database
-            attributeRepository.deleteAll(oldAttributes);
-            
-            // Tạo và lưu các thuộc tính mới
-            Set<ProductAttribute> newAttributes = new HashSet<>();
-            for (ProductAttributeDto attributeDto : productUpdateDto.getAttributes()) {
-                ProductAttribute attribute = new ProductAttribute();
-                attribute.setProduct(product);
-                attribute.setName(attributeDto.getName());
-                attribute.setValue(attributeDto.getValue());
-                newAttributes.add(attributeRepository.save(attribute));
-            }
-            
-            // Gán lại danh sách thuộc tính mới
-            product.setAttributes(newAttributes);
-            updatedProduct = productRepository.save(product);
+            applyAttributes(product, productUpdateDto.getAttributes());
         }
 
-        ProductDto productDto = mapToDto(updatedProduct);
+        // Product đang được quản lý nên mọi thay đổi (kể cả thuộc tính) được ghi trong một lần flush, theo batch.
+        // Flush để updatedAt (dùng làm version của sự kiện) được ghi trước khi phát sự kiện,
+        // kể cả khi chỉ thuộc tính thay đổi
+        product.setUpdatedAt(LocalDateTime.now());
+        productRepository.flush();
+        if (!isOnlyStockChange(productUpdateDto) || wasInStock != isInStock(product)) {
+            catalogVersionRepository.increment();
+        }
         
-        // Phát sự kiện sản phẩm được cập nhật
+        ProductDto productDto = mapToDto(product);
+        
+        // Phát sự kiện sản phẩm được cập nhật; chỉ đổi giá hoặc chỉ đổi tồn kho thì gửi sự kiện delta
         try {
-            eventPublisher.publishProductUpdated(productDto);
+            if (isOnlyPriceChange(productUpdateDto)) {
+                eventPublisher.publishPriceChanged(productDto);
+            } else if (isOnlyStockChange(productUpdateDto)) {
+                eventPublisher.publishStockChanged(productDto);
+            } else {
+                eventPublisher.publishProductUpdated(productDto);
+            }
             log.info("Published product updated event for product ID: {}", productDto.getId());
         } catch (Exception e) {
             log.error("Failed to publish product updated event for ID: {}", productDto.getId(), e);
@@ -200,6 +217,10 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#id"),
+            @CacheEvict(cacheNames = CacheConfig.CATEGORY_PRODUCTS, allEntries = true)
+    })
     public void deleteProduct(Long id) {
         if (!productRepository.existsById(id)) {
             throw new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + id);
@@ -209,6 +230,7 @@ public class ProductServiceImpl implements ProductService {
             // Phát sự kiện sản phẩm bị xóa
             ProductDto productDto = getProductById(id);
             productRepository.deleteById(id);
+            catalogVersionRepository.increment();
             eventPublisher.publishProductDeleted(productDto);
             log.info("Published product deleted event for product ID: {}", id);
         } catch (Exception e) {
@@ -217,13 +239,76 @@ public class ProductServiceImpl implements ProductService {
         }
     }
 
-    private ProductDto mapToDto(Product product) {
+    /**
+     * Đồng bộ thuộc tính của sản phẩm với danh sách mới theo tên thuộc tính:
+     * giữ nguyên thuộc tính không đổi, cập nhật giá trị thay đổi, thêm thuộc tính mới
+     * và xóa thuộc tính không còn trong danh sách (orphanRemoval).
+     * Nếu danh sách có nhiều thuộc tính trùng tên thì giá trị sau cùng được dùng.
+     */
+    static void applyAttributes(Product product, List<ProductAttributeDto> attributeDtos) {
+        Map<String, String> desired = new LinkedHashMap<>();
+        for (ProductAttributeDto attributeDto : attributeDtos) {
+            desired.put(attributeDto.getName(), attributeDto.getValue());
+        }
+
+        Set<ProductAttribute> attributes = product.getAttributes();
+        Set<String> kept = new HashSet<>();
+        attributes.removeIf(attribute -> {
+            String value = desired.get(attribute.getName());
+            // Thuộc tính bị bỏ hoặc trùng tên với thuộc tính đã giữ
+            if (value == null || !kept.add(attribute.getName())) {
+                return true;
+            }
+            if (!value.equals(attribute.getValue())) {
+                attribute.setValue(value);
+            }
+            return false;
+        });
+
+        desired.forEach((name, value) -> {
+            if (!kept.contains(name)) {
+                ProductAttribute attribute = new ProductAttribute();
+                attribute.setProduct(product);
+                attribute.setName(name);
+                attribute.setValue(value);
+                attributes.add(attribute);
+            }
+        });
+    }
+
+    /**
+     * Kiểm tra trên snapshot danh mục trong bộ nhớ, chỉ hỏi database khi snapshot chưa có danh mục này
+     */
+    private boolean categoryExists(Long categoryId) {
+        return categorySnapshotHolder.current().byId().containsKey(categoryId)
+                || categoryRepository.existsById(categoryId);
+    }
+
+    private static boolean isInStock(Product product) {
+        return product.getStockQuantity() != null && product.getStockQuantity() > 0;
+    }
+
+    private static boolean isOnlyPriceChange(ProductUpdateDto dto) {
+        return dto.getPrice() != null && dto.getStockQuantity() == null && hasNoOtherChanges(dto);
+    }
+
+    private static boolean isOnlyStockChange(ProductUpdateDto dto) {
+        return dto.getStockQuantity() != null && dto.getPrice() == null && hasNoOtherChanges(dto);
+    }
+
+    private static boolean hasNoOtherChanges(ProductUpdateDto dto) {
+        return dto.getName() == null && dto.getDescription() == null && dto.getImageUrl() == null
+                && dto.getCategoryId() == null && dto.getActive() == null && dto.getAttributes() == null;
+    }
+
+    static ProductDto mapToDto(Product product) {
         ProductDto.ProductDtoBuilder builder = ProductDto.builder()
                 .id(product.getId())
                 .name(product.getName())
                 .description(product.getDescription())
                 .price(product.getPrice())
                 .stockQuantity(product.getStockQuantity())
+                .soldCount(product.getSoldCount())
                 .imageUrl(product.getImageUrl())
                 .active(product.isActive())
                 .sellerId(product.getSellerId())
@@ -255,13 +340,13 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public Page<ProductDto> getProductsBySeller(String sellerId, Pageable pageable) {
         return productRepository.findBySellerIdAndActiveTrue(sellerId, pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
     public Page<ProductDto> searchProductsBySeller(String sellerId, String keyword, Pageable pageable) {
         return productRepository.findBySellerIdAndNameContainingIgnoreCaseAndActiveTrue(sellerId, keyword, pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
@@ -279,46 +364,57 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public Page<ProductDto> getProductsByActiveStatus(boolean active, Pageable pageable) {
         return productRepository.findByActive(active, pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
     public Page<ProductDto> getAllProductsIncludeInactive(Pageable pageable) {
         return productRepository.findAll(pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
     public Page<ProductDto> getProductsByCategoryAndSeller(Long categoryId, String sellerId, Pageable pageable) {
-        if (!categoryRepository.existsById(categoryId)) {
+        if (!categoryExists(categoryId)) {
             throw new ResourceNotFoundException("Danh mục không tồn tại với id: " + categoryId);
         }
         return productRepository.findByCategoryIdAndSellerIdAndActiveTrue(categoryId, sellerId, pageable)
-                .map(this::mapToDto);
+                .map(ProductServiceImpl::mapToDto);
     }
 
     @Override
     @Transactional
+    @Caching(evict = {
+            @CacheEvict(cacheNames = CacheConfig.PRODUCTS, key = "#productId"),
+            @CacheEvict(cacheNames = CacheConfig.CATEGORY_PRODUCTS, allEntries = true)
+    })
     public boolean updateStockQuantity(Long productId, int quantity) {
+        if (quantity <= 0) {
+            // Chỉ nhận số lượng bán: quantity âm sẽ cộng tồn kho và trừ soldCount
+            log.error("Số lượng bán không hợp lệ cho sản phẩm {}: {}", productId, quantity);
+            return false;
+        }
         try {
-            Product product = productRepository.findById(productId)
-                    .orElseThrow(() -> new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + productId));
-            
-            int currentStock = product.getStockQuantity();
-            
-            if (currentStock < quantity) {
+            // Trừ tồn kho và cộng soldCount trong một câu UPDATE có điều kiện đủ hàng,
+            // hai lần thanh toán đồng thời không thể cùng vượt qua kiểm tra rồi làm tồn kho âm
+            if (productRepository.decrementStock(productId, quantity, LocalDateTime.now()) == 0) {
+                Product product = productRepository.findById(productId)
+                        .orElseThrow(() -> new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + productId));
                 log.error("Không đủ số lượng sản phẩm {} trong kho. Yêu cầu: {}, Hiện có: {}", 
-                          productId, quantity, currentStock);
+                          productId, quantity, product.getStockQuantity());
                 return false;
             }
+            Product product = productRepository.findById(productId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Sản phẩm không tồn tại với id: " + productId));
+            if (product.getStockQuantity() == 0) {
+                // Hết hàng thay đổi listing; các lần giảm tồn kho khác không làm đổi ETag của listing
+                catalogVersionRepository.increment();
+            }
             
-            product.setStockQuantity(currentStock - quantity);
-            productRepository.save(product);
-            
-            // Phát sự kiện sản phẩm được cập nhật
+            // Phát sự kiện delta tồn kho thay vì toàn bộ sản phẩm
             try {
                 ProductDto productDto = mapToDto(product);
-                eventPublisher.publishProductUpdated(productDto);
+                eventPublisher.publishStockChanged(productDto);
                 log.info("Đã cập nhật số lượng tồn kho của sản phẩm ID: {}, giảm: {}, còn lại: {}", 
                          productId, quantity, product.getStockQuantity());
             } catch (Exception e) {
@@ -0,0 +1,40 @@
+-- Schema hiện tại của product-service (trước đây do Hibernate ddl-auto tạo).
+-- Dùng IF NOT EXISTS để chạy được cả trên database mới lẫn database đã có bảng
+-- (database cũ được baseline ở version 0 rồi chạy tiếp từ V1).
+
+CREATE TABLE IF NOT EXISTS categories (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name        VARCHAR(255) NOT NULL UNIQUE,
+    description VARCHAR(255),
+    created_at  TIMESTAMP(6),
+    updated_at  TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS products (
+    id             BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name           VARCHAR(255)   NOT NULL,
+    description    VARCHAR(1000),
+    price          NUMERIC(38, 2) NOT NULL,
+    stock_quantity INTEGER,
+    image_url      VARCHAR(255),
+    category_id    BIGINT REFERENCES categories (id),
+    active         BOOLEAN        NOT NULL,
+    sold_count     INTEGER,
+    seller_id      VARCHAR(255),
+    created_at     TIMESTAMP(6),
+    updated_at     TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS product_attributes (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    product_id BIGINT REFERENCES products (id),
+    name       VARCHAR(255) NOT NULL,
+    value      VARCHAR(255) NOT NULL
+);
+
+-- Cột được thêm sau khi một số database đã được tạo
+ALTER TABLE products ADD COLUMN IF NOT EXISTS sold_count INTEGER;
+ALTER TABLE products ADD COLUMN IF NOT EXISTS seller_id VARCHAR(255);
+
+-- Khóa ngoại không được Postgres tự đánh index
+CREATE INDEX IF NOT EXISTS idx_product_attributes_product_id ON product_attributes (product_id);
@@ -0,0 +1,2 @@
+-- Trigram index cho tìm kiếm theo tên (LIKE '%keyword%'); cần quyền CREATE trên database
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
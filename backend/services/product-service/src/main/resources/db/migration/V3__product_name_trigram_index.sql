@@ -0,0 +1,7 @@
+-- Index cho findByNameContainingIgnoreCaseAndActiveTrue và biến thể theo seller:
+-- Spring Data sinh upper(name) LIKE upper(?) nên index được tạo trên upper(name).
+-- Chỉ gồm sản phẩm đang bán vì mọi truy vấn tìm theo tên đều lọc active = true.
+-- CONCURRENTLY để không khóa ghi bảng products; Flyway tự chạy file này ngoài transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_name_trgm
+    ON products USING gin (upper(name) gin_trgm_ops)
+    WHERE active;
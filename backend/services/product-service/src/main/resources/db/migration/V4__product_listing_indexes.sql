@@ -0,0 +1,33 @@
+-- Index cho các truy vấn danh sách sản phẩm (ProductRepository).
+-- Các truy vấn phía khách hàng luôn lọc active = true nên index là partial WHERE active:
+-- nhỏ hơn và không phải cập nhật khi sản phẩm ẩn thay đổi.
+-- Cột thứ hai khớp với kiểu sắp xếp: id (mặc định của các controller) hoặc created_at (mới nhất).
+-- CONCURRENTLY để không khóa ghi; nếu migration lỗi giữa chừng cần DROP index INVALID trước khi chạy lại.
+
+-- findByActiveTrue sắp xếp theo ngày tạo
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_active_created_at
+    ON products (created_at)
+    WHERE active;
+
+-- findByCategoryIdAndActiveTrue
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_category_active_id
+    ON products (category_id, id)
+    WHERE active;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_category_active_created_at
+    ON products (category_id, created_at)
+    WHERE active;
+
+-- findBySellerIdAndActiveTrue; không partial vì export của seller (findIdsBySellerIdAfter)
+-- duyệt cả sản phẩm đã ẩn theo (seller_id, id)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_seller_id
+    ON products (seller_id, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_seller_active_created_at
+    ON products (seller_id, created_at)
+    WHERE active;
+
+-- findByCategoryIdAndSellerIdAndActiveTrue
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_products_category_seller_active_id
+    ON products (category_id, seller_id, id)
+    WHERE active;
@@ -0,0 +1,11 @@
+-- Version của danh sách sản phẩm (CatalogVersionRepository): một dòng duy nhất, tăng trong cùng transaction
+-- với mọi thay đổi hiển thị trên listing (tạo/sửa/xóa sản phẩm, đổi giá, ẩn/hiện, hết/có hàng trở lại).
+-- ETag của GET /api/products và /search được tính từ giá trị này nên kiểm tra If-None-Match là một lần đọc theo khóa chính.
+
+CREATE TABLE IF NOT EXISTS catalog_version (
+    id      BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO catalog_version (id, version) VALUES (1, 0)
+ON CONFLICT (id) DO NOTHING;
@@ -0,0 +1,12 @@
+-- Outbox của ProductEventPublisher: sự kiện Kafka gửi lỗi được ghi vào đây và gửi lại định kỳ theo thứ tự id,
+-- nên không mất khi buffer trong bộ nhớ đầy hay service khởi động lại. Gửi lại thành công thì xóa dòng.
+
+CREATE TABLE IF NOT EXISTS product_event_outbox (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_key   VARCHAR(64),
+    event_type  VARCHAR(64)  NOT NULL,
+    payload     TEXT         NOT NULL,
+    description VARCHAR(255),
+    attempts    INTEGER      NOT NULL DEFAULT 0,
+    created_at  TIMESTAMP(6) NOT NULL
+);
@@ -0,0 +1,149 @@
+package com.fourj.productservice.event.serialization;
+
+import com.fourj.productservice.dto.ProductAttributeDto;
+import com.fourj.productservice.dto.ProductDto;
+import com.fourj.productservice.event.dto.ProductEventDto;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Khóa định dạng nhị phân bằng các vector byte cố định.
+ * ProductEventDecoderTest của search-service decode đúng các vector này: sửa một bên thì phải sửa cả hai.
+ */
+class ProductEventBinaryCodecTest {
+
+    static final String UPDATED_V1 = "fe01"
+            + "0f50524f445543545f55504441544544"          // eventType
+            + "07"                                        // flags: productId, version, payload
+            + "023432"                                    // productId "42"
+            + "00061072557a3c71"                          // version
+            + "1fff01"                                    // fields (13 bit), active
+            + "000000000000002a"                          // id
+            + "08c3816f207468756e"                        // name "Áo thun"
+            + "06436f74746f6e"                            // description
+            + "0000000204012fa692"                        // price 199000.50
+            + "00000007" + "00000003"                     // stockQuantity, soldCount
+            + "1168747470733a2f2f63646e2f612e706e67"      // imageUrl
+            + "0000000000000005"                          // categoryId
+            + "0c5468e1bb9d69207472616e67"                // categoryName "Thời trang"
+            + "0873656c6c65722d31"                        // sellerId
+            + "00060dedc04fb580" + "00061072557a3c71"     // createdAt, updatedAt
+            + "02" + "010000000000000001044dc3a07505c490e1bb8f" + "000453697a65014d"; // attributes
+
+    static final String STOCK_DELTA_V1 = "fe01"
+            + "1550524f445543545f53544f434b5f55504441544544"
+            + "05"                                        // flags: productId, payload (không có version)
+            + "023432"
+            + "001100"                                    // fields: id, stockQuantity; active = false
+            + "000000000000002a"
+            + "00000000";
+
+    static final String DELETED_V1 = "fe01"
+            + "0f50524f445543545f44454c45544544"
+            + "01"                                        // flags: chỉ productId
+            + "023432";
+
+    static final String BULK_V2 = "fe02"
+            + "1450524f445543545f42554c4b5f55504441544544"
+            + "08"                                        // flags: chỉ products
+            + "02"                                        // 2 sản phẩm
+            + "080b01" + "0000000000000001" + "0141"      // id, name, price, updatedAt; active
+            + "0000000101f1"                              // price -1.5
+            + "ffffffffffffffff"                          // updatedAt 1969-12-31T23:59:59.999999 (micro âm)
+            + "100100" + "0000000000000002" + "00";       // id, attributes rỗng
+
+    static final String BULK_EMPTY_V2 = "fe02"
+            + "1450524f445543545f42554c4b5f55504441544544"
+            + "08"
+            + "00";
+
+    @Test
+    void encodesFullProductEvent() {
+        ProductDto product = ProductDto.builder()
+                .id(42L)
+                .name("Áo thun")
+                .description("Cotton")
+                .price(new BigDecimal("199000.50"))
+                .stockQuantity(7)
+                .soldCount(3)
+                .imageUrl("https://cdn/a.png")
+                .categoryId(5L)
+                .categoryName("Thời trang")
+                .active(true)
+                .sellerId("seller-1")
+                .attributes(List.of(new ProductAttributeDto(1L, "Màu", "Đỏ"), new ProductAttributeDto(null, "Size", "M")))
+                .createdAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_000))
+                .updatedAt(LocalDateTime.of(2024, 2, 3, 4, 5, 6, 654_321_000))
+                .build();
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType("PRODUCT_UPDATED")
+                .productId("42")
+                .version(1_706_933_106_654_321L)
+                .payload(product)
+                .build();
+
+        assertThat(hex(event)).isEqualTo(UPDATED_V1);
+    }
+
+    @Test
+    void omitsNullFields() {
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType("PRODUCT_STOCK_UPDATED")
+                .productId("42")
+                .payload(ProductDto.builder().id(42L).stockQuantity(0).build())
+                .build();
+
+        assertThat(hex(event)).isEqualTo(STOCK_DELTA_V1);
+    }
+
+    @Test
+    void encodesEventWithoutPayload() {
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType("PRODUCT_DELETED")
+                .productId("42")
+                .build();
+
+        assertThat(hex(event)).isEqualTo(DELETED_V1);
+    }
+
+    @Test
+    void encodesProductListAsVersion2() {
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType("PRODUCT_BULK_UPDATED")
+                .products(List.of(
+                        ProductDto.builder()
+                                .id(1L)
+                                .name("A")
+                                .price(new BigDecimal("-1.5"))
+                                .active(true)
+                                .updatedAt(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_000))
+                                .build(),
+                        ProductDto.builder()
+                                .id(2L)
+                                .attributes(List.of())
+                                .build()))
+                .build();
+
+        assertThat(hex(event)).isEqualTo(BULK_V2);
+    }
+
+    @Test
+    void encodesEmptyProductListAsVersion2() {
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType("PRODUCT_BULK_UPDATED")
+                .products(List.of())
+                .build();
+
+        assertThat(hex(event)).isEqualTo(BULK_EMPTY_V2);
+    }
+
+    private static String hex(ProductEventDto event) {
+        return HexFormat.of().formatHex(ProductEventBinaryCodec.encode(event));
+    }
+}
@@ -0,0 +1,123 @@
+package com.fourj.productservice.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kiểm tra query plan của các truy vấn danh sách sản phẩm trên PostgreSQL thật: mỗi truy vấn phải dùng
+ * index của V4__product_listing_indexes.sql thay vì Seq Scan. Schema được dựng bằng chính các migration Flyway
+ * trong schema riêng plan_test, nạp dữ liệu tổng hợp rồi ANALYZE.
+ * Chỉ chạy khi có PLAN_TEST_DB_URL (kèm PLAN_TEST_DB_USER, PLAN_TEST_DB_PASSWORD), ví dụ
+ * PLAN_TEST_DB_URL=jdbc:postgresql://localhost:5432/postgres mvn test -Dtest=ProductListingQueryPlanTest
+ */
+@EnabledIfEnvironmentVariable(named = "PLAN_TEST_DB_URL", matches = ".+")
+class ProductListingQueryPlanTest {
+
+    private static final String SCHEMA = "plan_test";
+    private static final int PRODUCTS = 200_000;
+    private static final int CATEGORIES = 200;
+    private static final int SELLERS = 1_000;
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void migrateAndSeed() throws SQLException {
+        String url = System.getenv("PLAN_TEST_DB_URL");
+        String user = System.getenv().getOrDefault("PLAN_TEST_DB_USER", "postgres");
+        String password = System.getenv().getOrDefault("PLAN_TEST_DB_PASSWORD", "postgres");
+
+        connection = DriverManager.getConnection(url, user, password);
+        execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+
+        Flyway.configure()
+                .dataSource(url, user, password)
+                .schemas(SCHEMA)
+                .configuration(Map.of("flyway.postgresql.transactional.lock", "false"))
+                .load()
+                .migrate();
+
+        execute("SET search_path TO " + SCHEMA + ", public");
+        execute("INSERT INTO categories (name, created_at, updated_at) "
+                + "SELECT 'Danh mục ' || c, now(), now() FROM generate_series(1, " + CATEGORIES + ") c");
+        // ~5% sản phẩm bị ẩn, created_at trải trên 2 năm
+        execute("INSERT INTO products (name, price, stock_quantity, category_id, active, sold_count, seller_id, "
+                + "created_at, updated_at) "
+                + "SELECT 'Sản phẩm ' || i, 100000 + i % 1000, i % 50, 1 + i % " + CATEGORIES + ", i % 20 <> 0, 0, "
+                + "'seller-' || (i % " + SELLERS + "), now() - (i % 730) * interval '1 day', now() "
+                + "FROM generate_series(1, " + PRODUCTS + ") i");
+        execute("ANALYZE categories");
+        execute("ANALYZE products");
+    }
+
+    @AfterAll
+    static void dropSchema() throws SQLException {
+        if (connection != null) {
+            execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            connection.close();
+        }
+    }
+
+    @Test
+    void newestActiveProductsUseActiveCreatedAtIndex() throws SQLException {
+        assertPlanUses("SELECT * FROM products WHERE active = true ORDER BY created_at DESC LIMIT 20",
+                "idx_products_active_created_at");
+    }
+
+    @Test
+    void categoryListingUsesCategoryIndexes() throws SQLException {
+        assertPlanUses("SELECT * FROM products WHERE category_id = 7 AND active = true ORDER BY id LIMIT 20",
+                "idx_products_category_active_id");
+        assertPlanUses("SELECT * FROM products WHERE category_id = 7 AND active = true "
+                + "ORDER BY created_at DESC LIMIT 20", "idx_products_category_active_created_at");
+    }
+
+    @Test
+    void sellerListingUsesSellerIndexes() throws SQLException {
+        assertPlanUses("SELECT * FROM products WHERE seller_id = 'seller-7' AND active = true "
+                + "ORDER BY created_at DESC LIMIT 20", "idx_products_seller_active_created_at");
+        assertPlanUses("SELECT * FROM products WHERE category_id = 7 AND seller_id = 'seller-7' AND active = true "
+                + "ORDER BY id LIMIT 20", "idx_products_category_seller_active_id");
+    }
+
+    @Test
+    void sellerExportUsesSellerIdIndex() throws SQLException {
+        // findIdsBySellerIdAfter duyệt cả sản phẩm đã ẩn
+        assertPlanUses("SELECT id FROM products WHERE seller_id = 'seller-7' AND id > 1000 ORDER BY id LIMIT 500",
+                "idx_products_seller_id");
+    }
+
+    private static void assertPlanUses(String sql, String index) throws SQLException {
+        String plan = explain(sql);
+        assertThat(plan).as(sql).contains(index);
+        assertThat(plan).as(sql).doesNotContain("Seq Scan on products");
+    }
+
+    private static String explain(String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.fourj.productservice.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvReaderTest {
+
+    @Test
+    void readsPlainAndEmptyFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("id,name,price\n1,,10\n2,Bút,\n"));
+
+        assertThat(reader.next()).containsExactly("id", "name", "price");
+        assertThat(reader.next()).containsExactly("1", "", "10");
+        assertThat(reader.next()).containsExactly("2", "Bút", "");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void readsQuotedFieldsWithCommasAndEscapedQuotes() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\"Áo, size L\",\"Màn hình 27\"\"\",\"\"\n"));
+
+        assertThat(reader.next()).containsExactly("Áo, size L", "Màn hình 27\"", "");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void keepsLineBreaksInsideQuotedFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("name,description\nBút,\"Dòng 1\nDòng 2\r\nDòng 3\"\nThước,Nhựa"));
+
+        assertThat(reader.next()).containsExactly("name", "description");
+        assertThat(reader.recordLine()).isEqualTo(1);
+
+        assertThat(reader.next()).containsExactly("Bút", "Dòng 1\nDòng 2\r\nDòng 3");
+        assertThat(reader.recordLine()).isEqualTo(2);
+
+        // Bản ghi sau trường nhiều dòng bắt đầu ở dòng vật lý thứ 5, không có xuống dòng cuối file
+        assertThat(reader.next()).containsExactly("Thước", "Nhựa");
+        assertThat(reader.recordLine()).isEqualTo(5);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void skipsBlankLinesAndHandlesCrlf() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,b\r\n\r\n\nc,d\r\n"));
+
+        assertThat(reader.next()).containsExactly("a", "b");
+        assertThat(reader.next()).containsExactly("c", "d");
+        assertThat(reader.recordLine()).isEqualTo(4);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void rejectsUnterminatedQuotedField() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("1,ok\n2,\"không đóng\n3,x\n"));
+
+        assertThat(reader.next()).containsExactly("1", "ok");
+        assertThatThrownBy(reader::next)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("line 2");
+    }
+
+    @Test
+    void readsBackEscapedValues() throws IOException {
+        List<String> values = List.of("plain", "có, dấu phẩy", "nháy \"kép\"", "hai\ndòng", "");
+        List<String> escaped = new ArrayList<>();
+        values.forEach(value -> escaped.add(CsvReader.escape(value)));
+
+        CsvReader reader = new CsvReader(new StringReader(String.join(",", escaped) + "\n"));
+
+        assertThat(reader.next()).containsExactlyElementsOf(values);
+        assertThat(CsvReader.escape(null)).isEmpty();
+    }
+}
@@ -0,0 +1,93 @@
+package com.fourj.productservice.service.impl;
+
+import com.fourj.productservice.dto.ProductAttributeDto;
+import com.fourj.productservice.model.Product;
+import com.fourj.productservice.model.ProductAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductServiceImplTest {
+
+    @Test
+    void applyAttributesUpdatesInPlaceAddsAndRemoves() {
+        Product product = new Product();
+        ProductAttribute color = attribute(product, 1L, "Màu", "Đỏ");
+        ProductAttribute size = attribute(product, 2L, "Size", "M");
+        ProductAttribute material = attribute(product, 3L, "Chất liệu", "Cotton");
+
+        ProductServiceImpl.applyAttributes(product, List.of(
+                new ProductAttributeDto(null, "Màu", "Đỏ"),
+                new ProductAttributeDto(null, "Size", "L"),
+                new ProductAttributeDto(null, "Thương hiệu", "FourJ")));
+
+        assertThat(values(product)).isEqualTo(Map.of("Màu", "Đỏ", "Size", "L", "Thương hiệu", "FourJ"));
+        // Thuộc tính giữ lại vẫn là entity cũ (không DELETE + INSERT), giá trị đổi được cập nhật tại chỗ
+        assertThat(product.getAttributes()).contains(color, size);
+        assertThat(size.getValue()).isEqualTo("L");
+        assertThat(product.getAttributes()).doesNotContain(material);
+
+        ProductAttribute added = find(product, "Thương hiệu");
+        assertThat(added.getId()).isNull();
+        assertThat(added.getProduct()).isSameAs(product);
+    }
+
+    @Test
+    void applyAttributesUsesLastValueForDuplicateNames() {
+        Product product = new Product();
+        attribute(product, 1L, "Màu", "Đỏ");
+
+        ProductServiceImpl.applyAttributes(product, List.of(
+                new ProductAttributeDto(null, "Màu", "Xanh"),
+                new ProductAttributeDto(null, "Màu", "Vàng")));
+
+        assertThat(product.getAttributes()).hasSize(1);
+        assertThat(find(product, "Màu").getId()).isEqualTo(1L);
+        assertThat(find(product, "Màu").getValue()).isEqualTo("Vàng");
+    }
+
+    @Test
+    void applyAttributesDropsExistingDuplicates() {
+        Product product = new Product();
+        attribute(product, 1L, "Màu", "Đỏ");
+        attribute(product, 2L, "Màu", "Xanh");
+
+        ProductServiceImpl.applyAttributes(product, List.of(new ProductAttributeDto(null, "Màu", "Xanh")));
+
+        assertThat(product.getAttributes()).hasSize(1);
+        assertThat(values(product)).isEqualTo(Map.of("Màu", "Xanh"));
+    }
+
+    @Test
+    void applyAttributesWithEmptyListRemovesAll() {
+        Product product = new Product();
+        attribute(product, 1L, "Màu", "Đỏ");
+        attribute(product, 2L, "Size", "M");
+
+        ProductServiceImpl.applyAttributes(product, List.of());
+
+        assertThat(product.getAttributes()).isEmpty();
+    }
+
+    private static ProductAttribute attribute(Product product, Long id, String name, String value) {
+        ProductAttribute attribute = new ProductAttribute(id, product, name, value);
+        product.getAttributes().add(attribute);
+        return attribute;
+    }
+
+    private static ProductAttribute find(Product product, String name) {
+        return product.getAttributes().stream()
+                .filter(attribute -> attribute.getName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static Map<String, String> values(Product product) {
+        return product.getAttributes().stream()
+                .collect(Collectors.toMap(ProductAttribute::getName, ProductAttribute::getValue));
+    }
+}
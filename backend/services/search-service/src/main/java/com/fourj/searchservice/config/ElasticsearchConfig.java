@@ -1,10 +1,12 @@
 package com.fourj.searchservice.config;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.JsonpMapper;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -15,6 +17,8 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.ssl.SSLContexts;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
@@ -41,8 +45,27 @@ public class ElasticsearchConfig {
     private boolean sslEnabled;
     private int connectTimeout;
     private int socketTimeout;
+    private Pool pool = new Pool();
     private IndexSettings indexSettings;
 
+    /**
+     * Connection pool của HTTP client dùng chung cho client đồng bộ và bất đồng bộ
+     */
+    @Data
+    public static class Pool {
+        // Mặc định của RestClient chỉ là 30 kết nối tổng / 10 mỗi node, thấp hơn số thread của Tomcat
+        private int maxConnTotal = 200;
+        private int maxConnPerRoute = 100;
+        // 0 = số CPU (mặc định của IO reactor)
+        private int ioThreadCount = 0;
+        // Thời gian tối đa giữ một kết nối rảnh; không vượt quá idle timeout của load balancer phía trước ES
+        private long keepAliveMs = 60_000;
+        // Thời gian chờ lấy kết nối khi pool đã hết, tránh request treo vô hạn lúc quá tải
+        private int connectionRequestTimeout = 1_000;
+        // Nén gzip body request (bulk, query lớn) và nhận response nén
+        private boolean compressionEnabled = true;
+    }
+
     @Data
     public static class IndexSettings {
         private ProductIndexSettings products;
@@ -55,6 +78,8 @@ public class ElasticsearchConfig {
         private int shards;
         private int replicas;
         private String refreshInterval;
+        // Sắp xếp segment theo createdAt giảm dần để sort NEWEST có thể dừng sớm
+        private boolean sortByCreatedAt;
     }
 
     @Bean
@@ -62,6 +87,8 @@ public class ElasticsearchConfig {
         ObjectMapper om = new ObjectMapper();
         om.registerModule(new JavaTimeModule());
         om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // Bỏ qua giá trị null khi gửi document (vd: weight/contexts rỗng của nameSuggest)
+        om.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         
         // Cấu hình để bỏ qua các trường không xác định
         om.configure(com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -78,32 +105,58 @@ public class ElasticsearchConfig {
             // Configure connection timeouts
             builder.setRequestConfigCallback(requestConfigBuilder -> requestConfigBuilder
                     .setConnectTimeout(connectTimeout)
-                    .setSocketTimeout(socketTimeout));
+                    .setSocketTimeout(socketTimeout)
+                    .setConnectionRequestTimeout(pool.getConnectionRequestTimeout()));
+            builder.setCompressionEnabled(pool.isCompressionEnabled());
 
-            // Configure authentication if credentials are provided
+            final CredentialsProvider credentialsProvider;
             if (StringUtils.hasText(username) && StringUtils.hasText(password)) {
-                final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider = new BasicCredentialsProvider();
                 credentialsProvider.setCredentials(AuthScope.ANY,
                         new UsernamePasswordCredentials(username, password));
+            } else {
+                credentialsProvider = null;
+            }
 
-                builder.setHttpClientConfigCallback(httpClientBuilder -> {
+            builder.setHttpClientConfigCallback(httpClientBuilder -> {
+                // Connection pool và IO reactor
+                httpClientBuilder.setMaxConnTotal(pool.getMaxConnTotal());
+                httpClientBuilder.setMaxConnPerRoute(pool.getMaxConnPerRoute());
+                IOReactorConfig.Builder ioReactor = IOReactorConfig.custom().setSoKeepAlive(true);
+                if (pool.getIoThreadCount() > 0) {
+                    ioReactor.setIoThreadCount(pool.getIoThreadCount());
+                }
+                httpClientBuilder.setDefaultIOReactorConfig(ioReactor.build());
+
+                // Dùng Keep-Alive do server trả về nhưng không quá keepAliveMs;
+                // mặc định của HttpClient là giữ vô hạn khi server không gửi header
+                httpClientBuilder.setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                            .getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0
+                            ? Math.min(serverKeepAlive, pool.getKeepAliveMs())
+                            : pool.getKeepAliveMs();
+                });
+
+                // Configure authentication if credentials are provided
+                if (credentialsProvider != null) {
                     httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+                }
 
-                    // Configure SSL if enabled
-                    if (sslEnabled) {
-                        try {
-                            SSLContext sslContext = SSLContexts.custom()
-                                    .loadTrustMaterial(null, (x509Certificates, s) -> true)
-                                    .build();
-                            httpClientBuilder.setSSLContext(sslContext);
-                        } catch (Exception e) {
-                            log.error("Error configuring SSL Context", e);
-                        }
+                // Configure SSL if enabled
+                if (sslEnabled) {
+                    try {
+                        SSLContext sslContext = SSLContexts.custom()
+                                .loadTrustMaterial(null, (x509Certificates, s) -> true)
+                                .build();
+                        httpClientBuilder.setSSLContext(sslContext);
+                    } catch (Exception e) {
+                        log.error("Error configuring SSL Context", e);
                     }
+                }
 
-                    return httpClientBuilder;
-                });
-            }
+                return httpClientBuilder;
+            });
 
             return builder.build();
         } catch (Exception e) {
@@ -113,11 +166,14 @@ public class ElasticsearchConfig {
     }
 
     @Bean
-    public ElasticsearchClient elasticsearchClient(RestClient restClient, JsonpMapper jsonpMapper) {
+    public ElasticsearchTransport elasticsearchTransport(RestClient restClient, JsonpMapper jsonpMapper) {
+        // Tạo transport sử dụng RestClient và mapper đã cấu hình
+        return new RestClientTransport(restClient, jsonpMapper);
+    }
+
+    @Bean
+    public ElasticsearchClient elasticsearchClient(ElasticsearchTransport transport) {
         try {
-            // Tạo transport sử dụng RestClient và mapper đã cấu hình
-            ElasticsearchTransport transport = new RestClientTransport(restClient, jsonpMapper);
-            
             // Tạo client sử dụng transport
             return new ElasticsearchClient(transport);
         } catch (Exception e) {
@@ -125,4 +181,12 @@ public class ElasticsearchConfig {
             throw new RuntimeException("Failed to create ElasticsearchClient", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Client bất đồng bộ dùng chung transport (và connection pool) với client đồng bộ
+     */
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticsearchTransport transport) {
+        return new ElasticsearchAsyncClient(transport);
+    }
+}
@@ -23,6 +23,7 @@ public class RedisConfig {
 
     private int hotKeysTtl;
     private int searchResultsTtl;
+    private int localMaxSize = 1000; // Số entry tối đa của cache L1 trong bộ nhớ
 
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
@@ -4,11 +4,13 @@ import com.fourj.searchservice.document.ProductDocument;
 import com.fourj.searchservice.dto.SearchRequest;
 import com.fourj.searchservice.dto.SearchResponse;
 import com.fourj.searchservice.dto.ProductIndexDto;
+import com.fourj.searchservice.exception.SearchServiceException;
 import com.fourj.searchservice.service.SearchService;
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
@@ -29,6 +31,8 @@ public class SearchController {
 
     private final SearchService searchService;
     
+    private static final String ATTRIBUTE_PARAM_PREFIX = "attr.";
+    
     /**
      * Tìm kiếm nâng cao với nhiều tùy chọn lọc và sắp xếp
      */
@@ -56,6 +60,8 @@ public class SearchController {
             log.debug("Search request: query={}, userId={}", request.getQuery(), userId);
             SearchResponse response = searchService.searchProducts(request);
             return ResponseEntity.ok(response);
+        } catch (SearchServiceException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during search", e);
             return ResponseEntity.internalServerError().build();
@@ -73,7 +79,8 @@ public class SearchController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(required = false) List<String> categories,
             @RequestParam(required = false) String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean compact) {
         
         try {
             // Chuyển đổi tham số thành SearchRequest
@@ -86,6 +93,7 @@ public class SearchController {
                     .categories(categories)
                     .sortOption(sortOption)
                     .includeAggregations(true)
+                    .compact(compact)
                     .build();
             
             SearchResponse response = searchService.searchProducts(request);
@@ -138,22 +146,31 @@ public class SearchController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "price") String sortBy,
-            @RequestParam(defaultValue = "asc") String sortDir) {
+            @RequestParam(defaultValue = "asc") String sortDir,
+            @RequestParam(defaultValue = "false") boolean useCursor,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean compact) {
         
         try {
             SearchRequest.SortOption sortOption = determineSortOption(sortBy, sortDir);
             
+            // Infinite scroll: dùng cursor (search_after) thay cho page để trang sâu không chậm dần
             SearchRequest request = SearchRequest.builder()
                     .query(keyword)
-                    .from(page * size)
+                    .from(useCursor || cursor != null ? 0 : page * size)
                     .size(size)
                     .categories(List.of(categoryId))
                     .sortOption(sortOption)
                     .includeAggregations(true)
+                    .useCursor(useCursor)
+                    .cursor(cursor)
+                    .compact(compact)
                     .build();
             
             SearchResponse response = searchService.searchProducts(request);
             return ResponseEntity.ok(response);
+        } catch (SearchServiceException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during category search", e);
             return ResponseEntity.internalServerError().build();
@@ -166,13 +183,24 @@ public class SearchController {
     @GetMapping("/products/filter")
     public ResponseEntity<SearchResponse> filterProducts(
             @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String brand,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(required = false) Map<String, List<String>> attributes) {
+            @RequestParam MultiValueMap<String, String> params) {
         
         try {
+            // Bộ lọc thuộc tính có tiền tố "attr." (vd: ?attr.color=red&attr.color=blue&attr.size=XL),
+            // để thuộc tính trùng tên với tham số phân trang (size, page) không bị hiểu nhầm
+            Map<String, List<String>> attributes = new HashMap<>();
+            params.forEach((name, values) -> {
+                if (name.startsWith(ATTRIBUTE_PARAM_PREFIX) && name.length() > ATTRIBUTE_PARAM_PREFIX.length()) {
+                    attributes.put(name.substring(ATTRIBUTE_PARAM_PREFIX.length()), values);
+                }
+            });
+            
             SearchRequest request = SearchRequest.builder()
                     .query(keyword)
+                    .brand(brand)
                     .from(page * size)
                     .size(size)
                     .attributes(attributes)
@@ -203,6 +231,24 @@ public class SearchController {
         List<String> suggestions = searchService.getSuggestions(prefix, size);
         return ResponseEntity.ok(suggestions);
     }
+
+    /**
+     * Auto-complete theo từng phím gõ, có thể giới hạn trong một danh mục
+     */
+    @GetMapping("/autocomplete")
+    @Timed(value = "search.autocomplete", description = "Time taken to serve type-ahead completions",
+            percentiles = {0.5, 0.95, 0.99})
+    public ResponseEntity<List<String>> autocomplete(
+            @RequestParam String prefix,
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "8") int size) {
+
+        if (size <= 0 || size > 20) {
+            size = 8;
+        }
+
+        return ResponseEntity.ok(searchService.getSuggestions(prefix, category, size));
+    }
     
     /**
      * Xác định tùy chọn sắp xếp dựa trên tham số
@@ -265,7 +311,7 @@ public class SearchController {
             if (success) {
                 return ResponseEntity.ok("Product indexed successfully");
             } else {
-                return ResponseEntity.badRequest().body("Failed to index product");
+                return ResponseEntity.accepted().body("Product could not be indexed now and was queued for retry");
             }
         } catch (Exception e) {
             log.error("Error indexing product", e);
@@ -283,8 +329,12 @@ public class SearchController {
                 return ResponseEntity.badRequest().body("No products provided");
             }
             
-            int count = searchService.bulkIndexProducts(products);
-            return ResponseEntity.ok("Indexed " + count + "/" + products.size() + " products successfully");
+            boolean success = searchService.bulkIndexProducts(products);
+            if (success) {
+                return ResponseEntity.ok("Indexed " + products.size() + " products successfully");
+            }
+            return ResponseEntity.accepted().body("Some of " + products.size()
+                    + " products could not be indexed now and were queued for retry");
         } catch (Exception e) {
             log.error("Error bulk indexing products", e);
             return ResponseEntity.internalServerError().body("Error: " + e.getMessage());
@@ -314,7 +364,7 @@ public class SearchController {
             if (success) {
                 return ResponseEntity.ok("Product deleted successfully");
             } else {
-                return ResponseEntity.badRequest().body("Failed to delete product");
+                return ResponseEntity.accepted().body("Product could not be deleted now and was queued for retry");
             }
         } catch (Exception e) {
             log.error("Error deleting product", e);
@@ -1,6 +1,5 @@
 package com.fourj.searchservice.document;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.*;
@@ -14,7 +13,7 @@ import java.util.Map;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @Getter
 @Document(indexName = "#{@elasticsearchConfig.indexSettings.products.name}")
 public class ProductDocument {
@@ -25,7 +24,6 @@ public class ProductDocument {
     @Field(type = FieldType.Text, analyzer = "standard_lowercase", searchAnalyzer = "standard_lowercase")
     private String name;
 
-    @JsonIgnore
     @CompletionField(
             analyzer = "standard_lowercase",
             searchAnalyzer = "standard_lowercase",
@@ -94,6 +92,9 @@ public class ProductDocument {
     @Field(type = FieldType.Keyword)
     private List<String> tags; // Các tag đặc biệt (hot, new, sale,...)
 
+    @Field(type = FieldType.Long)
+    private Long version; // Version của sự kiện đã ghi document này (external versioning)
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -0,0 +1,23 @@
+package com.fourj.searchservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Sự kiện sản phẩm nhận từ topic product-events (định dạng nhị phân hoặc JSON)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductEventDto {
+    private String eventType;
+    private String productId;
+    private Long version;
+    private ProductEventPayload payload;
+    private List<ProductEventPayload> products;  // PRODUCT_BULK_UPDATED
+}
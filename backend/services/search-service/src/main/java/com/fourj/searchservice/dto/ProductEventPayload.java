@@ -0,0 +1,44 @@
+package com.fourj.searchservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Dữ liệu sản phẩm trong sự kiện, tương ứng ProductDto của product-service.
+ * Sự kiện delta (tồn kho, giá) chỉ có id, các trường thay đổi và categoryName.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductEventPayload {
+    private Long id;
+    private String name;
+    private String description;
+    private BigDecimal price;
+    private Integer stockQuantity;
+    private Integer soldCount;
+    private String imageUrl;
+    private Long categoryId;
+    private String categoryName;
+    private Boolean active;
+    private String sellerId;
+    private List<Attribute> attributes;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Attribute {
+        private Long id;
+        private String name;
+        private String value;
+    }
+}
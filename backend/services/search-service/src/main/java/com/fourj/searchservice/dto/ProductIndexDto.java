@@ -1,5 +1,6 @@
 package com.fourj.searchservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fourj.searchservice.document.ProductDocument;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -12,6 +13,7 @@ import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Data
 @NoArgsConstructor
@@ -47,6 +49,11 @@ public class ProductIndexDto {
     @Field(type = FieldType.Float)
     private Float rating;
 
+    // Chỉ dùng khi admin index thủ công: version ghi vào Elasticsearch được tính từ updatedAt
+    @Field(type = FieldType.Date)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime updatedAt;
+
     // Phương thức chuyển đổi từ ProductDocument
     public static ProductIndexDto fromProductDocument(ProductDocument doc) {
         return ProductIndexDto.builder()
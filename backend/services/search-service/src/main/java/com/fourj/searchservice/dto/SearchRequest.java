@@ -22,6 +22,10 @@ public class SearchRequest {
     private int size;
     private boolean includeAggregations;
     private String userId;  // For personalization
+    private boolean useCursor;  // Phân trang bằng search_after + point-in-time thay cho from/size
+    private String cursor;      // nextCursor của trang trước
+    private boolean compact;    // Chỉ trả về các trường cho trang danh sách (id, tên, giá, ảnh, rating)
+    private List<String> highlightFields;  // Các trường cần highlight: name, description
 
     @Data
     @Builder
@@ -20,7 +20,9 @@ public class SearchResponse {
     private List<ProductIndexDto> products;
     private List<String> suggestedTerms;
     private Map<String, List<FacetEntry>> facets;
+    private Map<String, Map<String, List<String>>> highlights;  // productId -> field -> fragments
     private String searchTime;
+    private String nextCursor;  // null khi không dùng cursor hoặc đã hết kết quả
 
     @Data
     @Builder
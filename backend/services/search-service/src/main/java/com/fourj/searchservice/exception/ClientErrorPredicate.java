@@ -0,0 +1,16 @@
+package com.fourj.searchservice.exception;
+
+import java.util.function.Predicate;
+
+/**
+ * Lỗi do request của client (SearchServiceException 4xx, vd: cursor không hợp lệ/hết hạn).
+ * Được cấu hình làm ignoreExceptionPredicate của circuit breaker elasticsearch để request sai
+ * không làm mở breaker và chặn toàn bộ tìm kiếm.
+ */
+public class ClientErrorPredicate implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable throwable) {
+        return throwable instanceof SearchServiceException e && e.getStatus() < 500;
+    }
+}
@@ -0,0 +1,228 @@
+package com.fourj.searchservice.listener;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fourj.searchservice.dto.ProductEventDto;
+import com.fourj.searchservice.dto.ProductEventPayload;
+import com.fourj.searchservice.exception.KafkaProcessingException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decode message của topic product-events thành ProductEventDto.
+ * Message bắt đầu bằng byte 0xFE là định dạng nhị phân của product-service (ProductEventBinaryCodec),
+ * còn lại được đọc như JSON (producer cũ hoặc message gửi tay).
+ * Định dạng nhị phân version 2 thêm danh sách products cho PRODUCT_BULK_UPDATED.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductEventDecoder {
+
+    static final byte MAGIC = (byte) 0xFE;
+    static final byte FORMAT_VERSION = 1;
+    static final byte FORMAT_VERSION_PRODUCTS = 2;
+
+    private final ObjectMapper objectMapper;
+
+    public ProductEventDto decode(byte[] message) {
+        if (message == null || message.length == 0) {
+            throw new KafkaProcessingException("Empty product event");
+        }
+        try {
+            return message[0] == MAGIC ? decodeBinary(ByteBuffer.wrap(message)) : decodeJson(message);
+        } catch (KafkaProcessingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new KafkaProcessingException("Malformed product event", e);
+        }
+    }
+
+    /**
+     * Đọc JSON bằng streaming parser: các trường được gán thẳng vào DTO, payload được
+     * deserialize trực tiếp thành ProductEventPayload mà không dựng cây JsonNode trung gian
+     */
+    private ProductEventDto decodeJson(byte[] message) throws IOException {
+        ProductEventDto event = new ProductEventDto();
+        List<ProductEventPayload> legacyProducts = null;
+
+        try (JsonParser parser = objectMapper.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new KafkaProcessingException("Product event is not a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+
+                switch (field) {
+                    case "eventType" -> event.setEventType(parser.getText());
+                    case "productId" -> event.setProductId(parser.getText());
+                    case "version" -> event.setVersion(parser.getValueAsLong());
+                    // PRODUCT_BULK_UPDATED cũ gửi danh sách trong "payload", định dạng mới dùng "products"
+                    case "payload" -> {
+                        if (token == JsonToken.START_ARRAY) {
+                            legacyProducts = readProducts(parser);
+                        } else {
+                            event.setPayload(parser.readValueAs(ProductEventPayload.class));
+                        }
+                    }
+                    case "products" -> event.setProducts(readProducts(parser));
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        if (event.getProducts() == null) {
+            event.setProducts(legacyProducts);
+        }
+        return event;
+    }
+
+    /**
+     * Đọc đến hết mảng; phần tử null bị bỏ qua để parser luôn dừng đúng ở END_ARRAY
+     */
+    private static List<ProductEventPayload> readProducts(JsonParser parser) throws IOException {
+        List<ProductEventPayload> products = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                products.add(parser.readValueAs(ProductEventPayload.class));
+            } else if (token != JsonToken.VALUE_NULL) {
+                throw new KafkaProcessingException("Unexpected " + token + " in product list");
+            }
+        }
+        return products;
+    }
+
+    private static ProductEventDto decodeBinary(ByteBuffer in) {
+        in.get(); // magic
+        byte formatVersion = in.get();
+        if (formatVersion != FORMAT_VERSION && formatVersion != FORMAT_VERSION_PRODUCTS) {
+            throw new KafkaProcessingException("Unsupported product event format version: " + formatVersion);
+        }
+
+        ProductEventDto event = new ProductEventDto();
+        event.setEventType(readString(in));
+        int flags = in.get();
+        if ((flags & 1) != 0) {
+            event.setProductId(readString(in));
+        }
+        if ((flags & (1 << 1)) != 0) {
+            event.setVersion(in.getLong());
+        }
+        if ((flags & (1 << 2)) != 0) {
+            event.setPayload(readProduct(in));
+        }
+        if ((flags & (1 << 3)) != 0) {
+            int count = readVarInt(in);
+            List<ProductEventPayload> products = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                products.add(readProduct(in));
+            }
+            event.setProducts(products);
+        }
+        return event;
+    }
+
+    private static ProductEventPayload readProduct(ByteBuffer in) {
+        int fields = in.getShort() & 0xFFFF;
+        ProductEventPayload product = new ProductEventPayload();
+        product.setActive(in.get() != 0);
+
+        if (has(fields, 0)) {
+            product.setId(in.getLong());
+        }
+        if (has(fields, 1)) {
+            product.setName(readString(in));
+        }
+        if (has(fields, 2)) {
+            product.setDescription(readString(in));
+        }
+        if (has(fields, 3)) {
+            product.setPrice(readDecimal(in));
+        }
+        if (has(fields, 4)) {
+            product.setStockQuantity(in.getInt());
+        }
+        if (has(fields, 5)) {
+            product.setSoldCount(in.getInt());
+        }
+        if (has(fields, 6)) {
+            product.setImageUrl(readString(in));
+        }
+        if (has(fields, 7)) {
+            product.setCategoryId(in.getLong());
+        }
+        if (has(fields, 8)) {
+            product.setCategoryName(readString(in));
+        }
+        if (has(fields, 9)) {
+            product.setSellerId(readString(in));
+        }
+        if (has(fields, 10)) {
+            product.setCreatedAt(fromMicros(in.getLong()));
+        }
+        if (has(fields, 11)) {
+            product.setUpdatedAt(fromMicros(in.getLong()));
+        }
+        if (has(fields, 12)) {
+            int count = readVarInt(in);
+            List<ProductEventPayload.Attribute> attributes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Long id = in.get() != 0 ? in.getLong() : null;
+                attributes.add(new ProductEventPayload.Attribute(id, readString(in), readString(in)));
+            }
+            product.setAttributes(attributes);
+        }
+        return product;
+    }
+
+    private static boolean has(int fields, int index) {
+        return (fields & (1 << index)) != 0;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        int scale = in.getInt();
+        byte[] unscaled = new byte[readVarInt(in)];
+        in.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new KafkaProcessingException("Malformed varint in product event");
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
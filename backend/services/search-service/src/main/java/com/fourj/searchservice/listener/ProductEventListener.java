@@ -1,82 +1,108 @@
 package com.fourj.searchservice.listener;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fourj.searchservice.document.ProductDocument;
+import com.fourj.searchservice.dto.ProductEventDto;
+import com.fourj.searchservice.dto.ProductEventPayload;
+import com.fourj.searchservice.service.PartialUpdateBuffer;
 import com.fourj.searchservice.service.ProductIndexingService;
+import com.fourj.searchservice.service.SearchCacheService;
+import com.fourj.searchservice.service.SearchMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.elasticsearch.core.suggest.Completion;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Map;
+import java.util.Set;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class ProductEventListener {
 
-    private final ObjectMapper objectMapper;
+    private final ProductEventDecoder productEventDecoder;
     private final ProductIndexingService productIndexingService;
-    
-    private static final int BATCH_SIZE = 100;
-    private final List<ProductDocument> batchBuffer = Collections.synchronizedList(new ArrayList<>(BATCH_SIZE));
-    private final AtomicInteger batchCounter = new AtomicInteger(0);
-    private final ReentrantLock batchLock = new ReentrantLock();
+    private final SearchCacheService searchCacheService;
+    private final SearchMetrics searchMetrics;
+    private final PartialUpdateBuffer partialUpdateBuffer;
     
     @KafkaListener(topics = "${kafka.topics.product-events:product-events}", groupId = "${spring.kafka.consumer.group-id}")
-    public void handleProductEvent(String payload) {
+    public void handleProductEvent(byte[] message) {
         try {
-            JsonNode eventNode = objectMapper.readTree(payload);
-            String eventType = eventNode.path("eventType").asText();
+            ProductEventDto event = productEventDecoder.decode(message);
+            String eventType = event.getEventType();
             
             log.debug("Received product event: type={}", eventType);
             
             switch (eventType) {
                 case "PRODUCT_CREATED":
                 case "PRODUCT_UPDATED":
-                    JsonNode productNode = eventNode.path("payload");
-                    
                     // Chuyển đổi từ Product model sang ProductDocument
-                    ProductDocument product = convertToProductDocument(productNode);
+                    ProductDocument product = event.getPayload() != null
+                            ? convertToProductDocument(event.getPayload()) : null;
                     
                     if (product != null) {
+                        // Version của sự kiện (nếu producer gửi) được ưu tiên hơn version tính từ updatedAt
+                        if (event.getVersion() != null) {
+                            product.setVersion(event.getVersion());
+                        }
+                        // Danh mục đang được index: sản phẩm chuyển danh mục thì cache của danh mục cũ cũng phải xóa
+                        Map<String, String> previous = "PRODUCT_UPDATED".equals(eventType)
+                                ? productIndexingService.findIndexedCategories(List.of(product.getId()))
+                                : Map.of();
                         handleProductCreateOrUpdate(product);
+                        Set<String> categories = new HashSet<>(previous.values());
+                        categories.add(product.getCategoryName());
+                        searchCacheService.invalidateCategories(categories);
                     } else {
-                        log.warn("Could not convert product payload for id: {}", 
-                                eventNode.path("productId").asText());
+                        log.warn("Could not convert product payload for id: {}", event.getProductId());
+                    }
+                    break;
+                    
+                case "PRODUCT_STOCK_CHANGED":
+                case "PRODUCT_PRICE_CHANGED":
+                    ProductIndexingService.PartialUpdate update = convertToPartialUpdate(event);
+                    if (update != null) {
+                        partialUpdateBuffer.add(update);
                     }
                     break;
                     
                 case "PRODUCT_DELETED":
-                    String productId = eventNode.path("productId").asText();
-                    productIndexingService.deleteProduct(productId);
+                    String deletedCategory = event.getPayload() != null ? event.getPayload().getCategoryName() : null;
+                    if (deletedCategory == null && event.getProductId() != null) {
+                        deletedCategory = productIndexingService.findIndexedCategories(List.of(event.getProductId()))
+                                .get(event.getProductId());
+                    }
+                    productIndexingService.deleteProduct(event.getProductId(), event.getVersion());
+                    searchCacheService.invalidateCategory(deletedCategory);
                     break;
                     
                 case "PRODUCT_BULK_UPDATED":
                     List<ProductDocument> products = new ArrayList<>();
-                    JsonNode productsNode = eventNode.path("payload");
                     
-                    if (productsNode.isArray()) {
-                        for (JsonNode node : productsNode) {
-                            ProductDocument doc = convertToProductDocument(node);
+                    if (event.getProducts() != null) {
+                        for (ProductEventPayload payload : event.getProducts()) {
+                            ProductDocument doc = convertToProductDocument(payload);
                             if (doc != null) {
                                 products.add(doc);
                             }
                         }
                         
                         if (!products.isEmpty()) {
+                            Map<String, String> previousCategories = productIndexingService.findIndexedCategories(
+                                    products.stream().map(ProductDocument::getId).toList());
                             productIndexingService.bulkIndexProducts(products);
+                            products.forEach(doc -> searchMetrics.recordIndexingLag(doc.getUpdatedAt()));
+                            Set<String> bulkCategories = new HashSet<>(previousCategories.values());
+                            products.forEach(doc -> bulkCategories.add(doc.getCategoryName()));
+                            searchCacheService.invalidateCategories(bulkCategories);
                         }
                     }
                     break;
@@ -85,76 +111,85 @@ public class ProductEventListener {
                     log.warn("Unknown event type: {}", eventType);
             }
         } catch (Exception e) {
-            log.error("Error processing product event: {}", payload, e);
+            log.error("Error processing product event ({} bytes)", message == null ? 0 : message.length, e);
             // Cân nhắc gửi đến dead-letter-queue
         }
     }
     
     /**
-     * Chuyển đổi từ Product model sang ProductDocument
+     * Chuyển sự kiện delta thành partial update, chỉ gồm các trường mà sự kiện mang theo
      */
-    private ProductDocument convertToProductDocument(JsonNode productNode) {
-        try {
-            Long id = productNode.path("id").asLong();
-            String name = productNode.path("name").asText();
-            // Xử lý createdAt
-            LocalDateTime createdAt;
-            if (productNode.has("createdAt") && !productNode.path("createdAt").asText().isEmpty()) {
-                try {
-                    createdAt = LocalDateTime.parse(productNode.path("createdAt").asText());
-                } catch (DateTimeParseException e) {
-                    log.warn("Invalid createdAt format: {}, using current time",
-                            productNode.path("createdAt").asText());
-                    createdAt = LocalDateTime.now();
-                }
-            } else {
-                createdAt = LocalDateTime.now();
+    private ProductIndexingService.PartialUpdate convertToPartialUpdate(ProductEventDto event) {
+        ProductEventPayload payload = event.getPayload();
+        String productId = event.getProductId() != null ? event.getProductId()
+                : payload != null && payload.getId() != null ? String.valueOf(payload.getId()) : null;
+        if (productId == null || payload == null || event.getVersion() == null) {
+            log.warn("Ignoring {} event without product id, payload or version", event.getEventType());
+            return null;
+        }
+        
+        Map<String, Object> fields = new HashMap<>();
+        if ("PRODUCT_STOCK_CHANGED".equals(event.getEventType())) {
+            if (payload.getStockQuantity() != null) {
+                fields.put("stockQuantity", payload.getStockQuantity());
+                fields.put("inStock", payload.getStockQuantity() > 0);
             }
-
-            // Xử lý updatedAt
-            LocalDateTime updatedAt;
-            if (productNode.has("updatedAt") && !productNode.path("updatedAt").asText().isEmpty()) {
-                try {
-                    updatedAt = LocalDateTime.parse(productNode.path("updatedAt").asText());
-                } catch (DateTimeParseException e) {
-                    log.warn("Invalid updatedAt format: {}, using current time",
-                            productNode.path("updatedAt").asText());
-                    updatedAt = LocalDateTime.now();
-                }
-            } else {
-                updatedAt = LocalDateTime.now();
+            if (payload.getSoldCount() != null) {
+                fields.put("soldCount", payload.getSoldCount());
             }
+        } else if (payload.getPrice() != null) {
+            fields.put("price", payload.getPrice());
+        }
+        
+        if (fields.isEmpty()) {
+            return null;
+        }
+        return new ProductIndexingService.PartialUpdate(productId, event.getVersion(),
+                payload.getCategoryName(), fields);
+    }
+    
+    /**
+     * Chuyển đổi từ Product model sang ProductDocument
+     */
+    private ProductDocument convertToProductDocument(ProductEventPayload payload) {
+        try {
+            String name = payload.getName();
+            LocalDateTime createdAt = payload.getCreatedAt() != null ? payload.getCreatedAt() : LocalDateTime.now();
+            LocalDateTime updatedAt = payload.getUpdatedAt() != null ? payload.getUpdatedAt() : LocalDateTime.now();
+            int stockQuantity = payload.getStockQuantity() != null ? payload.getStockQuantity() : 0;
             
             ProductDocument document = ProductDocument.builder()
-                    .id(String.valueOf(id))
+                    .id(String.valueOf(payload.getId()))
                     .name(name)
-                    .description(productNode.path("description").asText())
-                    .price(productNode.has("price") ? 
-                            new BigDecimal(productNode.path("price").asText()) : null)
-                    .stockQuantity(productNode.path("stockQuantity").asInt())
-                    .imageUrl(productNode.path("imageUrl").asText())
-                    .categoryId(productNode.path("categoryId").asLong())
-                    .categoryName(productNode.path("categoryName").asText())
-                    .active(productNode.path("active").asBoolean(true))
+                    .description(payload.getDescription())
+                    .price(payload.getPrice())
+                    .stockQuantity(stockQuantity)
+                    .imageUrl(payload.getImageUrl())
+                    .categoryId(payload.getCategoryId())
+                    .categoryName(payload.getCategoryName())
+                    .active(payload.getActive() == null || payload.getActive())
                     .createdAt(createdAt)
                     .updatedAt(updatedAt)
-                    .inStock(productNode.path("stockQuantity").asInt() > 0)
+                    .inStock(stockQuantity > 0)
+                    .soldCount(payload.getSoldCount() != null ? payload.getSoldCount() : 0)
+                    .version(payload.getUpdatedAt() != null ? ProductIndexingService.toVersion(payload.getUpdatedAt()) : null)
                     .build();
             
             // Thêm completion cho search suggest
-            Completion nameSuggest = new Completion(Collections.singletonList(name));
-            document.setNameSuggest(nameSuggest);
+            if (name != null) {
+                document.setNameSuggest(new Completion(Collections.singletonList(name)));
+            }
             
             // Trích xuất attributes nếu có
-            if (productNode.has("attributes") && productNode.path("attributes").isArray()) {
+            if (payload.getAttributes() != null) {
                 List<ProductDocument.ProductAttribute> attributes = new ArrayList<>();
                 
-                for (JsonNode attrNode : productNode.path("attributes")) {
+                for (ProductEventPayload.Attribute attr : payload.getAttributes()) {
                     ProductDocument.ProductAttribute attribute = ProductDocument.ProductAttribute.builder()
-                            .name(attrNode.path("name").asText())
-                            .value(attrNode.path("value").asText())
-                            .displayName(attrNode.path("name").asText())
-                            .displayValue(attrNode.path("value").asText())
+                            .name(attr.getName())
+                            .value(attr.getValue())
+                            .displayName(attr.getName())
+                            .displayValue(attr.getValue())
                             .build();
                     
                     attributes.add(attribute);
@@ -165,94 +200,22 @@ public class ProductEventListener {
             
             return document;
         } catch (Exception e) {
-            log.error("Error converting product node to document", e);
+            log.error("Error converting product payload to document", e);
             return null;
         }
     }
     
     /**
-     * Xử lý tạo hoặc cập nhật sản phẩm
-     * Tối ưu bằng cách gom nhóm các sản phẩm để bulk index
+     * Xử lý tạo hoặc cập nhật sản phẩm: index một lần, ngay lập tức.
+     * Khi Elasticsearch lỗi, fallback của indexProduct đã đưa thao tác vào retry log nên không cần ghi lại lần hai.
      */
     private void handleProductCreateOrUpdate(ProductDocument product) {
         try {
-            // Đầu tiên, luôn đảm bảo sản phẩm mới được indexed ngay lập tức
-            try {
-                productIndexingService.indexProduct(product);
-                log.info("Product immediately indexed: {}", product.getId());
-            } catch (Exception e) {
-                log.error("Failed to immediately index product: {}", product.getId(), e);
-            }
-            
-            // Vẫn giữ logic batch cho các cập nhật tiếp theo
-            batchLock.lock();
-            try {
-                // Thêm sản phẩm vào buffer
-                batchBuffer.add(product);
-                int currentSize = batchCounter.incrementAndGet();
-                
-                // Nếu buffer đầy, thực hiện bulk index
-                if (currentSize >= BATCH_SIZE) {
-                    List<ProductDocument> batchToProcess = new ArrayList<>(batchBuffer);
-                    batchBuffer.clear();
-                    batchCounter.set(0);
-                    
-                    batchLock.unlock(); // Unlock trước khi gọi service để tránh blocking
-                    
-                    try {
-                        productIndexingService.bulkIndexProducts(batchToProcess);
-                    } catch (Exception e) {
-                        log.error("Error during bulk indexing, processing individually", e);
-                        // Xử lý từng sản phẩm
-                        for (ProductDocument doc : batchToProcess) {
-                            try {
-                                productIndexingService.indexProduct(doc);
-                            } catch (Exception ex) {
-                                log.error("Failed to index individual product: {}", doc.getId(), ex);
-                            }
-                        }
-                    }
-                } else {
-                    batchLock.unlock(); // Unlock nếu chưa đủ kích thước batch
-                }
-            } finally {
-                if (batchLock.isHeldByCurrentThread()) {
-                    batchLock.unlock();
-                }
-            }
-        } catch (Exception e) {
-            log.error("Critical error in batch processing: {}", e.getMessage(), e);
-            // Luôn đảm bảo xử lý sản phẩm hiện tại
-            try {
-                productIndexingService.indexProduct(product);
-            } catch (Exception ignored) {
-                log.error("Failed to index product as fallback: {}", product.getId(), ignored);
-            }
-        }
-    }
-
-    // Thêm scheduler để xử lý batch còn lại nếu không đủ kích thước
-    @Scheduled(fixedDelay = 30000) // 30 giây
-    public void processRemainingBatch() {
-        try {
-            batchLock.lock();
-            if (!batchBuffer.isEmpty()) {
-                log.info("Processing remaining {} items in batch", batchBuffer.size());
-                List<ProductDocument> batchToProcess = new ArrayList<>(batchBuffer);
-                batchBuffer.clear();
-                batchCounter.set(0);
-                
-                batchLock.unlock();
-                
-                productIndexingService.bulkIndexProducts(batchToProcess);
-            } else {
-                batchLock.unlock();
-            }
+            productIndexingService.indexProduct(product);
+            searchMetrics.recordIndexingLag(product.getUpdatedAt());
+            log.info("Product indexed: {}", product.getId());
         } catch (Exception e) {
-            log.error("Error processing remaining batch", e);
-            if (batchLock.isHeldByCurrentThread()) {
-                batchLock.unlock();
-            }
+            log.error("Failed to index product: {}", product.getId(), e);
         }
     }
-} 
\ No newline at end of file
+}
@@ -52,12 +52,18 @@ public class IndexManagementService {
                 aliases.put(alias, Alias.of(a -> a.isWriteIndex(true)));
             }
             
+            // Index sort theo createdAt (tùy chọn, chỉ áp dụng khi tạo index)
+            IndexSegmentSort segmentSort = indexSettings.isSortByCreatedAt()
+                    ? IndexSegmentSort.of(so -> so.field("createdAt").order(SegmentSortOrder.Desc))
+                    : null;
+
             // Tạo bộ lọc stop token cho tiếng Việt
             CreateIndexResponse response = client.indices().create(c -> c
                     .index(indexName)
                     .settings(s -> s
                             .numberOfShards(String.valueOf(indexSettings.getShards()))
                             .numberOfReplicas(String.valueOf(indexSettings.getReplicas()))
+                            .sort(segmentSort)
                             .refreshInterval(builder -> builder.time(
                                     TimeValue.parseTimeValue(indexSettings.getRefreshInterval(), "refreshInterval").toString()
                             ))
@@ -81,7 +87,10 @@ public class IndexManagementService {
 
                     .mappings(m -> m
                             .properties("id", p -> p.keyword(k -> k))
-                            .properties("name", p -> p.text(txt -> txt.analyzer("vietnamese_analyzer")))
+                            // Trường con wildcard phục vụ tìm chuỗi con (*abc*) mà không phải quét toàn bộ term dictionary
+                            .properties("name", p -> p.text(txt -> txt
+                                    .analyzer("vietnamese_analyzer")
+                                    .fields("wildcard", f -> f.wildcard(w -> w))))
                             .properties("description", p -> p.text(txt -> txt.analyzer("vietnamese_analyzer")))
                             .properties("price", p -> p.double_(d -> d))
                             .properties("stockQuantity", p -> p.integer(i -> i))
@@ -92,8 +101,9 @@ public class IndexManagementService {
                             .properties("createdAt", p -> p.date(d -> d))
                             .properties("updatedAt", p -> p.date(d -> d))
                             .properties("attributes", p -> p.nested(n -> n
-                                    .properties("name", np -> np.keyword(k -> k))
-                                    .properties("value", np -> np.keyword(k -> k))
+                                    // eager global ordinals: facet thuộc tính không phải dựng ordinals lúc truy vấn
+                                    .properties("name", np -> np.keyword(k -> k.eagerGlobalOrdinals(true)))
+                                    .properties("value", np -> np.keyword(k -> k.eagerGlobalOrdinals(true)))
                                     .properties("displayName", np -> np.text(t -> t.analyzer("vietnamese_analyzer")))
                                     .properties("displayValue", np -> np.text(t -> t.analyzer("vietnamese_analyzer")))
                             ))
@@ -105,7 +115,13 @@ public class IndexManagementService {
                             .properties("reviewCount", p -> p.integer(i -> i))
                             .properties("soldCount", p -> p.integer(i -> i))
                             .properties("tags", p -> p.keyword(k -> k))
-                            .properties("nameSuggest", p -> p.completion(comp -> comp.analyzer("vietnamese_analyzer")))
+                            .properties("version", p -> p.long_(l -> l))
+                            .properties("nameSuggest", p -> p.completion(comp -> comp
+                                    .analyzer("vietnamese_analyzer")
+                                    .contexts(ctx -> ctx
+                                            .name("category")
+                                            .type("category")
+                                            .path("categoryName"))))
                     )
                     .aliases(aliases)
             );
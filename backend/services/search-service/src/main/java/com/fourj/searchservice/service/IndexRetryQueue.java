@@ -0,0 +1,456 @@
+package com.fourj.searchservice.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fourj.searchservice.config.ElasticsearchConfig;
+import com.fourj.searchservice.document.ProductDocument;
+import com.fourj.searchservice.service.ProductIndexingService.PartialUpdate;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Hàng đợi retry bền vững cho các thao tác index/xóa thất bại khi Elasticsearch lỗi hoặc circuit breaker mở.
+ * Mỗi thao tác được ghi thêm (append-only, fsync) thành một dòng JSON vào file log; khi breaker đóng
+ * lại, log được replay theo batch bằng bulk request, chỉ giữ thao tác có version mới nhất của mỗi productId.
+ * Delta (giá, tồn kho) được gộp riêng và replay sau thao tác index/xóa đầy đủ.
+ */
+@Component
+@Slf4j
+public class IndexRetryQueue {
+
+    private static final String ELASTICSEARCH_BREAKER = "elasticsearch";
+    private static final String OP_INDEX = "INDEX";
+    private static final String OP_DELETE = "DELETE";
+    private static final String OP_PARTIAL = "PARTIAL";
+    private static final long NOT_WRITTEN = Long.MIN_VALUE;
+
+    private final ElasticsearchClient client;
+    private final ElasticsearchConfig elasticsearchConfig;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry;
+    private final Path logPath;
+    private final int batchSize;
+    private final long partialTtlMs;
+
+    private final Object lock = new Object();
+    private FileChannel channel;
+
+    // productId đang chờ replay -> version lớn nhất đã ghi trực tiếp thành công (NOT_WRITTEN = chưa có)
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+
+    private final Counter enqueued;
+    private final Counter replayed;
+    private final Counter dropped;
+
+    public IndexRetryQueue(ElasticsearchClient client,
+                           ElasticsearchConfig elasticsearchConfig,
+                           ObjectMapper objectMapper,
+                           ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry,
+                           MeterRegistry meterRegistry,
+                           @Value("${indexing.retry-log.path:./data/index-retry.log}") String logPath,
+                           @Value("${indexing.retry-log.batch-size:200}") int batchSize,
+                           @Value("${indexing.retry-log.partial-ttl-ms:600000}") long partialTtlMs) throws IOException {
+        this.client = client;
+        this.elasticsearchConfig = elasticsearchConfig;
+        this.objectMapper = objectMapper;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.logPath = Paths.get(logPath).toAbsolutePath();
+        this.batchSize = batchSize;
+        this.partialTtlMs = partialTtlMs;
+
+        Files.createDirectories(this.logPath.getParent());
+        this.channel = openChannel();
+
+        // Nạp lại các productId còn chờ từ lần chạy trước
+        forEachEntry(0, channel.size(), entry -> pending.put(entry.id(), NOT_WRITTEN));
+        if (!pending.isEmpty()) {
+            log.info("Index retry log {} has {} pending products", this.logPath, pending.size());
+        }
+
+        this.enqueued = retryCounter(meterRegistry, "enqueued");
+        this.replayed = retryCounter(meterRegistry, "replayed");
+        this.dropped = retryCounter(meterRegistry, "dropped");
+        Gauge.builder("search.indexing.retry.pending", pending, Map::size)
+                .description("Products with index operations waiting in the retry log")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Lưu thao tác index để replay sau
+     */
+    public void enqueueIndex(ProductDocument product) {
+        // nameSuggest được dựng lại từ name khi index, không cần lưu; dùng bản sao để không sửa document của caller
+        ProductDocument copy = product.toBuilder().nameSuggest(null).build();
+        append(List.of(new RetryEntry(OP_INDEX, product.getId(), System.currentTimeMillis(), product.getVersion(), copy, null)));
+    }
+
+    /**
+     * Lưu thao tác xóa để replay sau
+     */
+    public void enqueueDelete(String productId, Long version) {
+        append(List.of(new RetryEntry(OP_DELETE, productId, System.currentTimeMillis(), version, null, null)));
+    }
+
+    /**
+     * Lưu các delta để replay sau, ghi cả batch với một lần fsync
+     */
+    public void enqueuePartial(Collection<PartialUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        append(updates.stream()
+                .map(update -> new RetryEntry(OP_PARTIAL, update.productId(), now, update.version(), null, update.fields()))
+                .toList());
+    }
+
+    /**
+     * Gọi khi ghi trực tiếp thành công (kể cả noop vì index đã mới hơn): entry có version không lớn hơn
+     * sẽ bị bỏ qua khi replay. Ghi không có version không đánh dấu gì.
+     */
+    public void markWritten(String productId, Long version) {
+        if (version != null) {
+            pending.computeIfPresent(productId, (id, written) -> Math.max(written, version));
+        }
+    }
+
+    private void append(List<RetryEntry> entries) {
+        try {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (RetryEntry entry : entries) {
+                lines.write(toLine(entry));
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            synchronized (lock) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                entries.forEach(entry -> pending.putIfAbsent(entry.id(), NOT_WRITTEN));
+            }
+            enqueued.increment(entries.size());
+            if (entries.size() == 1) {
+                log.warn("Queued {} of product {} for retry", entries.get(0).op(), entries.get(0).id());
+            } else {
+                log.warn("Queued {} operations for retry", entries.size());
+            }
+        } catch (IOException e) {
+            log.error("Could not persist {} operations to retry log", entries.size(), e);
+        }
+    }
+
+    /**
+     * Replay log khi circuit breaker đã đóng. Các dòng được ghi thêm trong lúc replay
+     * được giữ lại cho lần sau, các thao tác lỗi tạm thời được ghi lại trước chúng.
+     */
+    @Scheduled(fixedDelayString = "${indexing.retry-log.replay-interval-ms:15000}")
+    public void replay() {
+        if (pending.isEmpty() || !breakerClosed()) {
+            return;
+        }
+
+        try {
+            long snapshotEnd;
+            synchronized (lock) {
+                snapshotEnd = channel.size();
+            }
+
+            // Latest wins theo version; delta được gộp riêng
+            Map<String, RetryEntry> latest = new LinkedHashMap<>();
+            Map<String, RetryEntry> partials = new LinkedHashMap<>();
+            forEachEntry(0, snapshotEnd, entry -> {
+                if (OP_PARTIAL.equals(entry.op())) {
+                    partials.merge(entry.id(), entry, IndexRetryQueue::mergePartial);
+                } else {
+                    latest.merge(entry.id(), entry, IndexRetryQueue::newer);
+                }
+            });
+
+            Set<String> replayedIds = ConcurrentHashMap.newKeySet();
+            List<RetryEntry> failed = new ArrayList<>();
+            List<RetryEntry> batch = new ArrayList<>(batchSize);
+            for (RetryEntry entry : latest.values()) {
+                if (alreadyWritten(entry)) {
+                    replayedIds.add(entry.id());
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    flush(batch, replayedIds, failed);
+                    batch.clear();
+                }
+            }
+            flush(batch, replayedIds, failed);
+
+            // Delta chạy sau thao tác đầy đủ để document (nếu vừa được tạo lại) đã có trong index
+            long expiredBefore = System.currentTimeMillis() - partialTtlMs;
+            for (RetryEntry entry : partials.values()) {
+                if (alreadyWritten(entry)) {
+                    replayedIds.add(entry.id());
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    flushPartial(batch, expiredBefore, replayedIds, failed);
+                    batch.clear();
+                }
+            }
+            flushPartial(batch, expiredBefore, replayedIds, failed);
+
+            compact(snapshotEnd, failed);
+            log.info("Replayed {} products from retry log, {} still pending", replayedIds.size(), pending.size());
+        } catch (Exception e) {
+            log.warn("Index retry replay failed, will try again later: {}", e.getMessage());
+        }
+    }
+
+    private void flush(List<RetryEntry> batch, Set<String> replayedIds, List<RetryEntry> failed) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (RetryEntry entry : batch) {
+            if (OP_DELETE.equals(entry.op())) {
+                bulk.operations(ProductIndexingService.deleteOperation(indexName, entry.id(), entry.version()));
+            } else {
+                bulk.operations(ProductIndexingService.indexOperation(indexName, entry.document()));
+            }
+        }
+
+        // Lỗi kết nối ném IOException: giữ nguyên log, replay lại ở lần sau
+        BulkResponse response = client.bulk(bulk.build());
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            RetryEntry entry = batch.get(i);
+            if (item.error() == null || (OP_DELETE.equals(entry.op()) && item.status() == 404)) {
+                // Kể cả noop: index đã có dữ liệu mới hơn entry này
+                replayedIds.add(entry.id());
+                replayed.increment();
+            } else if (ProductIndexingService.isRetriable(item)) {
+                failed.add(entry);
+            } else {
+                // Lỗi vĩnh viễn (mapping, document không hợp lệ): retry cũng không thành công
+                log.error("Dropping {} of product {} from retry log: {}", entry.op(), entry.id(), item.error().reason());
+                replayedIds.add(entry.id());
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Replay delta. Sản phẩm chưa có trong index (404) được giữ lại chờ sự kiện tạo, tối đa partialTtlMs
+     */
+    private void flushPartial(List<RetryEntry> batch, long expiredBefore,
+                              Set<String> replayedIds, List<RetryEntry> failed) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (RetryEntry entry : batch) {
+            bulk.operations(ProductIndexingService.partialUpdateOperation(indexName, toPartialUpdate(entry)));
+        }
+
+        BulkResponse response = client.bulk(bulk.build());
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            RetryEntry entry = batch.get(i);
+            if (item.error() == null) {
+                replayedIds.add(entry.id());
+                replayed.increment();
+            } else if (ProductIndexingService.isRetriable(item)
+                    || (item.status() == 404 && entry.enqueuedAt() > expiredBefore)) {
+                failed.add(entry);
+            } else {
+                log.error("Dropping partial update of product {} from retry log: {}", entry.id(), item.error().reason());
+                replayedIds.add(entry.id());
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Đã có bản ghi trực tiếp với version không nhỏ hơn entry sau khi ES phục hồi
+     */
+    boolean alreadyWritten(RetryEntry entry) {
+        return entry.version() != null && pending.getOrDefault(entry.id(), NOT_WRITTEN) >= entry.version();
+    }
+
+    /**
+     * Entry có version lớn hơn thắng; thiếu version thì entry ghi sau thắng
+     */
+    static RetryEntry newer(RetryEntry current, RetryEntry incoming) {
+        if (current.version() != null && incoming.version() != null) {
+            return incoming.version() >= current.version() ? incoming : current;
+        }
+        return incoming;
+    }
+
+    /**
+     * Gộp 2 delta của cùng sản phẩm theo quy tắc của PartialUpdateBuffer; giữ thời điểm enqueue mới nhất cho TTL
+     */
+    private static RetryEntry mergePartial(RetryEntry current, RetryEntry incoming) {
+        PartialUpdate merged = PartialUpdateBuffer.merge(toPartialUpdate(current), toPartialUpdate(incoming));
+        return new RetryEntry(OP_PARTIAL, merged.productId(), Math.max(current.enqueuedAt(), incoming.enqueuedAt()),
+                merged.version(), null, merged.fields());
+    }
+
+    private static PartialUpdate toPartialUpdate(RetryEntry entry) {
+        long version = entry.version() != null ? entry.version() : 0L;
+        return new PartialUpdate(entry.id(), version, null, entry.fields());
+    }
+
+    /**
+     * Viết lại log: các entry lỗi tạm thời + phần được ghi thêm sau snapshot, rồi thay file bằng atomic move.
+     * Phần đuôi được chép thẳng giữa hai file nên không phụ thuộc kích thước log.
+     */
+    private void compact(long snapshotEnd, List<RetryEntry> failed) throws IOException {
+        synchronized (lock) {
+            long size = channel.size();
+            Path tmp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (RetryEntry entry : failed) {
+                    ByteBuffer line = ByteBuffer.wrap(toLine(entry));
+                    while (line.hasRemaining()) {
+                        out.write(line);
+                    }
+                }
+                for (long position = snapshotEnd; position < size; ) {
+                    position += channel.transferTo(position, size - position, out);
+                }
+                out.force(true);
+            }
+
+            channel.close();
+            Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel();
+
+            // Chỉ các productId còn trong log mới còn chờ
+            Set<String> stillPending = new HashSet<>();
+            forEachEntry(0, channel.size(), entry -> stillPending.add(entry.id()));
+            pending.keySet().retainAll(stillPending);
+            stillPending.forEach(id -> pending.putIfAbsent(id, NOT_WRITTEN));
+        }
+    }
+
+    /**
+     * Đọc lần lượt từng dòng trong khoảng [from, to) của log, không nạp cả file vào bộ nhớ
+     */
+    private void forEachEntry(long from, long to, Consumer<RetryEntry> action) throws IOException {
+        if (to <= from) {
+            return;
+        }
+
+        try (FileChannel reader = FileChannel.open(logPath, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(reader.position(from)))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for (long remaining = to - from; remaining > 0; remaining--) {
+                int b = in.read();
+                if (b < 0) {
+                    break;
+                }
+                if (b == '\n') {
+                    parseLine(line, action);
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+            parseLine(line, action);
+        }
+    }
+
+    private void parseLine(ByteArrayOutputStream line, Consumer<RetryEntry> action) {
+        String content = line.toString(StandardCharsets.UTF_8);
+        if (content.isBlank()) {
+            return;
+        }
+        try {
+            action.accept(objectMapper.readValue(content, RetryEntry.class));
+        } catch (IOException e) {
+            // Dòng ghi dở khi process bị dừng đột ngột
+            log.warn("Skipping unreadable retry log line: {}", e.getMessage());
+        }
+    }
+
+    private byte[] toLine(RetryEntry entry) throws IOException {
+        return (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean breakerClosed() {
+        CircuitBreakerRegistry registry = circuitBreakerRegistry.getIfAvailable();
+        return registry == null
+                || registry.circuitBreaker(ELASTICSEARCH_BREAKER).getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    private FileChannel openChannel() throws IOException {
+        // READ cần cho transferTo khi compact, mà READ không đi cùng APPEND được: ghi tại cuối file, luôn dưới lock
+        FileChannel opened = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return opened.position(opened.size());
+    }
+
+    @PreDestroy
+    void close() {
+        synchronized (lock) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static Counter retryCounter(MeterRegistry registry, String result) {
+        return Counter.builder("search.indexing.retry")
+                .description("Index operations going through the durable retry log")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    record RetryEntry(String op, String id, long enqueuedAt, Long version, ProductDocument document,
+                      Map<String, Object> fields) {
+    }
+}
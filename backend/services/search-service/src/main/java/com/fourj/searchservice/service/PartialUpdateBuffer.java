@@ -0,0 +1,125 @@
+package com.fourj.searchservice.service;
+
+import com.fourj.searchservice.service.ProductIndexingService.PartialUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Gom các sự kiện delta (tồn kho, giá) theo productId trong một cửa sổ thời gian ngắn.
+ * Nhiều lần đổi tồn kho của cùng sản phẩm (mỗi lần checkout) chỉ thành một partial update khi flush.
+ * Chỉ scheduler flush, listener Kafka không bao giờ chờ Elasticsearch; delta ghi lỗi được
+ * ProductIndexingService đưa vào IndexRetryQueue nên không mất khi breaker mở hoặc service khởi động lại.
+ */
+@Component
+@Slf4j
+public class PartialUpdateBuffer {
+
+    private final ProductIndexingService productIndexingService;
+    private final SearchCacheService searchCacheService;
+
+    private final ConcurrentHashMap<String, PartialUpdate> pending = new ConcurrentHashMap<>();
+
+    private final Counter received;
+    private final Counter flushed;
+
+    public PartialUpdateBuffer(ProductIndexingService productIndexingService,
+                               SearchCacheService searchCacheService,
+                               MeterRegistry meterRegistry) {
+        this.productIndexingService = productIndexingService;
+        this.searchCacheService = searchCacheService;
+
+        this.received = Counter.builder("search.indexing.partial.updates")
+                .description("Partial update events received")
+                .tag("stage", "received")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("search.indexing.partial.updates")
+                .description("Partial updates sent to Elasticsearch after coalescing")
+                .tag("stage", "flushed")
+                .register(meterRegistry);
+        Gauge.builder("search.indexing.partial.pending", pending, Map::size)
+                .description("Products with partial updates waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Thêm delta vào buffer, gộp với delta đang chờ của cùng sản phẩm
+     */
+    public void add(PartialUpdate update) {
+        received.increment();
+        pending.merge(update.productId(), update, PartialUpdateBuffer::merge);
+    }
+
+    @Scheduled(fixedDelayString = "${indexing.partial-updates.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PartialUpdate> batch = new ArrayList<>(pending.size());
+        for (String productId : new ArrayList<>(pending.keySet())) {
+            PartialUpdate update = pending.remove(productId);
+            if (update != null) {
+                batch.add(update);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<PartialUpdate> applied;
+        try {
+            // Lỗi ES (kể cả breaker mở) được xử lý bên trong: delta lỗi đã nằm trong retry log
+            applied = productIndexingService.bulkPartialUpdate(batch);
+        } catch (Exception e) {
+            log.warn("Partial update flush of {} products failed, keeping them for the next flush: {}",
+                    batch.size(), e.getMessage());
+            batch.forEach(update -> pending.merge(update.productId(), update, PartialUpdateBuffer::merge));
+            return;
+        }
+        flushed.increment(applied.size());
+
+        Set<String> categories = applied.stream()
+                .filter(PartialUpdateBuffer::affectsSearchResults)
+                .map(PartialUpdate::categoryName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (!categories.isEmpty()) {
+            searchCacheService.invalidateCategories(categories);
+        }
+    }
+
+    /**
+     * Delta có làm kết quả tìm kiếm đã cache sai đi không: giá (lọc, sắp xếp, facet) hoặc sản phẩm vừa hết hàng.
+     * Các lần giảm tồn kho khác (mỗi checkout) không xóa cache, nhất là các truy vấn "_all" của trang chủ;
+     * soldCount (sắp xếp bán chạy) và có hàng trở lại được cập nhật khi entry hết hạn theo TTL.
+     */
+    static boolean affectsSearchResults(PartialUpdate update) {
+        return update.fields().containsKey("price") || Boolean.FALSE.equals(update.fields().get("inStock"));
+    }
+
+    /**
+     * Gộp 2 delta: trường của delta có version mới hơn được ưu tiên, version lấy giá trị lớn nhất
+     */
+    static PartialUpdate merge(PartialUpdate current, PartialUpdate incoming) {
+        PartialUpdate older = incoming.version() >= current.version() ? current : incoming;
+        PartialUpdate newer = older == current ? incoming : current;
+
+        Map<String, Object> fields = new HashMap<>(older.fields());
+        fields.putAll(newer.fields());
+        String categoryName = newer.categoryName() != null ? newer.categoryName() : older.categoryName();
+        return new PartialUpdate(newer.productId(), newer.version(), categoryName, fields);
+    }
+}
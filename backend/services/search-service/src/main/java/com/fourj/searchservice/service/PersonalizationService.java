@@ -0,0 +1,125 @@
+package com.fourj.searchservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lấy danh sách sản phẩm gợi ý của user từ recommendation-service để tăng điểm trong kết quả tìm kiếm.
+ * Danh sách được cache với TTL ngắn và refresh bất đồng bộ; search không bao giờ chờ recommendation-service:
+ * lần đầu (hoặc khi đang tải) search chạy không cá nhân hóa, các lần sau dùng danh sách đã cache.
+ */
+@Service
+@Slf4j
+public class PersonalizationService {
+
+    private static final ParameterizedTypeReference<List<Long>> PRODUCT_IDS = new ParameterizedTypeReference<>() {
+    };
+
+    private final boolean enabled;
+    private final RestClient restClient;
+    private final ExecutorService executor;
+    private final AsyncLoadingCache<String, List<String>> recommendations;
+    private final Counter applied;
+    private final Counter notReady;
+
+    public PersonalizationService(RestClient.Builder restClientBuilder,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${recommendation.enabled:true}") boolean enabled,
+                                  @Value("${recommendation.base-url:http://recommendation-service:8090}") String baseUrl,
+                                  @Value("${recommendation.timeout-ms:1000}") int timeoutMs,
+                                  @Value("${recommendation.cache.ttl-seconds:300}") long ttlSeconds,
+                                  @Value("${recommendation.cache.refresh-seconds:60}") long refreshSeconds,
+                                  @Value("${recommendation.cache.max-size:100000}") long maxSize) {
+        this.enabled = enabled;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMs);
+        requestFactory.setReadTimeout(timeoutMs);
+        this.restClient = restClientBuilder
+                .baseUrl(baseUrl)
+                .requestFactory(requestFactory)
+                .build();
+
+        // Executor riêng để việc gọi HTTP không chiếm ForkJoinPool chung
+        this.executor = Executors.newFixedThreadPool(4);
+        this.recommendations = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .refreshAfterWrite(Duration.ofSeconds(refreshSeconds))
+                .executor(executor)
+                .buildAsync(this::fetchRecommendations);
+
+        this.applied = Counter.builder("search.personalization")
+                .description("Searches by identified users, by whether recommendations were available")
+                .tag("result", "applied")
+                .register(meterRegistry);
+        this.notReady = Counter.builder("search.personalization")
+                .description("Searches by identified users, by whether recommendations were available")
+                .tag("result", "not_ready")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Id các sản phẩm gợi ý cho user nếu đã có trong cache; không chặn để chờ recommendation-service
+     */
+    public List<String> getRecommendedProductIds(String userId) {
+        if (!enabled || !StringUtils.hasText(userId)) {
+            return Collections.emptyList();
+        }
+
+        // get() trả về ngay: nạp bất đồng bộ nếu chưa có, refresh nền nếu entry đã cũ
+        CompletableFuture<List<String>> future = recommendations.get(userId.trim());
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            List<String> ids = future.join();
+            if (!ids.isEmpty()) {
+                applied.increment();
+            }
+            return ids;
+        }
+
+        notReady.increment();
+        return Collections.emptyList();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Không chờ các lần tải đang chạy: kết quả chỉ dùng cho cache
+        executor.shutdownNow();
+    }
+
+    private List<String> fetchRecommendations(String userId) {
+        // recommendation-service chỉ nhận user_id kiểu số
+        if (!userId.chars().allMatch(Character::isDigit)) {
+            return Collections.emptyList();
+        }
+
+        try {
+            List<Long> ids = restClient.get()
+                    .uri("/api/v1/recommendations/{userId}", userId)
+                    .retrieve()
+                    .body(PRODUCT_IDS);
+            return ids == null ? Collections.emptyList() : ids.stream().map(String::valueOf).toList();
+        } catch (Exception e) {
+            // Danh sách rỗng chỉ được giữ đến lần refresh kế tiếp, sau đó sẽ gọi lại recommendation-service
+            log.warn("Could not fetch recommendations for user {}: {}", userId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+}
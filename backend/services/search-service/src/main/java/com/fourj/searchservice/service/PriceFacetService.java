@@ -0,0 +1,136 @@
+package com.fourj.searchservice.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.aggregations.Percentiles;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermsQuery;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import com.fourj.searchservice.config.ElasticsearchConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Tính các mốc giá cho facet "price_ranges" theo phân bố giá thực tế của từng nhóm danh mục.
+ * Mốc giá lấy từ percentiles (20/40/60/80) rồi làm tròn cho dễ đọc, và được cache
+ * nên truy vấn tìm kiếm chỉ cần một range aggregation với các mốc có sẵn.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PriceFacetService {
+
+    private static final String PRICE_PERCENTILES_AGG = "price_percentiles";
+    private static final List<Double> PERCENTS = List.of(20.0, 40.0, 60.0, 80.0);
+
+    // Mốc mặc định khi không tính được (index trống, Elasticsearch lỗi...)
+    static final List<Double> DEFAULT_BOUNDARIES = List.of(500000.0, 1000000.0, 2000000.0, 5000000.0);
+
+    private final ElasticsearchClient client;
+    private final ElasticsearchConfig elasticsearchConfig;
+
+    private final Cache<String, List<Double>> boundariesCache = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    /**
+     * Mốc giá cho tập danh mục (null/rỗng = toàn bộ catalog)
+     */
+    public List<Double> getBoundaries(Collection<String> categories) {
+        String key = categories == null ? "" : categories.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+
+        List<Double> cached = boundariesCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            List<Double> boundaries = computeBoundaries(categories);
+            boundariesCache.put(key, boundaries);
+            return boundaries;
+        } catch (Exception e) {
+            // Không cache lỗi, lần sau sẽ thử tính lại
+            log.warn("Could not compute price facets for categories [{}]: {}", key, e.getMessage());
+            return DEFAULT_BOUNDARIES;
+        }
+    }
+
+    private List<Double> computeBoundaries(Collection<String> categories) throws Exception {
+        // size 0 và chỉ có filter: không tính điểm, không lấy hits, filter được ES cache
+        BoolQuery.Builder filter = new BoolQuery.Builder()
+                .filter(TermQuery.of(t -> t.field("active").value(true))._toQuery());
+        if (categories != null && !categories.isEmpty()) {
+            filter.filter(TermsQuery.of(t -> t
+                    .field("categoryName")
+                    .terms(tv -> tv.value(categories.stream()
+                            .filter(Objects::nonNull)
+                            .map(FieldValue::of)
+                            .collect(Collectors.toList()))))._toQuery());
+        }
+        Query query = filter.build()._toQuery();
+
+        SearchResponse<Void> response = client.search(s -> s
+                .index(elasticsearchConfig.getIndexSettings().getProducts().getName())
+                .size(0)
+                .query(query)
+                .aggregations(PRICE_PERCENTILES_AGG, a -> a
+                        .percentiles(p -> p.field("price").percents(PERCENTS))),
+                Void.class);
+
+        Percentiles percentiles = response.aggregations().get(PRICE_PERCENTILES_AGG).tdigestPercentiles().values();
+        List<Double> raw = new ArrayList<>();
+        if (percentiles.isKeyed()) {
+            percentiles.keyed().values().forEach(value -> raw.add(parse(value)));
+        } else {
+            percentiles.array().forEach(item -> raw.add(item.value()));
+        }
+
+        List<Double> boundaries = toBoundaries(raw);
+        log.debug("Computed price boundaries {} for categories {}", boundaries, categories);
+        return boundaries;
+    }
+
+    /**
+     * Làm tròn các percentile về 2 chữ số có nghĩa, bỏ trùng; cần ít nhất 2 mốc để facet có ý nghĩa
+     */
+    static List<Double> toBoundaries(List<Double> percentileValues) {
+        TreeSet<Double> rounded = new TreeSet<>();
+        for (Double value : percentileValues) {
+            if (value != null && !value.isNaN() && value > 0) {
+                rounded.add(roundNice(value));
+            }
+        }
+        return rounded.size() < 2 ? DEFAULT_BOUNDARIES : List.copyOf(rounded);
+    }
+
+    static double roundNice(double value) {
+        double magnitude = Math.pow(10, Math.floor(Math.log10(value)) - 1);
+        return Math.round(value / magnitude) * magnitude;
+    }
+
+    private static Double parse(String value) {
+        try {
+            return value == null ? null : Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.fourj.searchservice.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Script;
 import co.elastic.clients.elasticsearch.core.BulkRequest;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
-import co.elastic.clients.elasticsearch.core.DeleteRequest;
-import co.elastic.clients.elasticsearch.core.IndexRequest;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.json.JsonData;
 import com.fourj.searchservice.config.ElasticsearchConfig;
 import com.fourj.searchservice.document.ProductDocument;
 import com.fourj.searchservice.exception.ElasticsearchException;
@@ -12,22 +17,54 @@ import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.core.suggest.Completion;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Ghi sản phẩm vào Elasticsearch.
+ * Mọi thao tác ghi (index đầy đủ, delta giá/tồn kho, xóa) là update có script so sánh version của sự kiện
+ * với trường version trong _source: thao tác không mới hơn version đang lưu trở thành noop. Thứ tự vì vậy
+ * không phụ thuộc _version của ES (update API chỉ tăng _version thêm 1), và delta chỉ ghi các trường của nó
+ * ngay trên shard nên không ghi đè một sự kiện đầy đủ đến cùng lúc.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ProductIndexingService {
 
+    private static final String STALE = "params.version != null && ctx._source.version != null"
+            + " && ctx._source.version >= params.version";
+    // scripted upsert: document chưa có thì ctx._source là {} và được ghi toàn bộ
+    static final String INDEX_SCRIPT = "if (" + STALE + ") { ctx.op = 'noop' }"
+            + " else { ctx._source.clear(); ctx._source.putAll(params.doc) }";
+    static final String PARTIAL_UPDATE_SCRIPT = "if (" + STALE + ") { ctx.op = 'noop' }"
+            + " else { ctx._source.putAll(params.fields); ctx._source.version = params.version }";
+    static final String DELETE_SCRIPT = "if (" + STALE + ") { ctx.op = 'noop' } else { ctx.op = 'delete' }";
+    // Hai update cùng document chạy đồng thời trên shard: ES đọc lại và chạy lại script
+    private static final int RETRY_ON_CONFLICT = 3;
+    
     private final ElasticsearchClient client;
+    private final ElasticsearchAsyncClient asyncClient;
     private final ElasticsearchConfig elasticsearchConfig;
+    private final SearchMetrics searchMetrics;
+    private final IndexRetryQueue indexRetryQueue;
+    
+    @Value("${indexing.bulk.max-in-flight:4}")
+    private int maxBulkInFlight;
     
     /**
      * Index một sản phẩm đơn lẻ
@@ -36,27 +73,24 @@ public class ProductIndexingService {
     @Retry(name = "elasticsearch")
     public boolean indexProduct(ProductDocument product) {
         try {
-            // Đảm bảo có dữ liệu cho auto-suggest
-            if (product.getNameSuggest() == null && product.getName() != null) {
-                Completion completion = new Completion(Collections.singletonList(product.getName()));
-                product.setNameSuggest(completion);
-            }
-            
-            // Đảm bảo có giá trị inStock dựa vào stockQuantity
-            if (product.getInStock() == null && product.getStockQuantity() != null) {
-                product.setInStock(product.getStockQuantity() > 0);
-            }
-            
             String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
             
-            IndexRequest<ProductDocument> request = IndexRequest.of(r -> r
-                    .index(indexName)
-                    .id(product.getId())
-                    .document(product));
+            BulkResponseItem item = writeOne(indexOperation(indexName, product));
+            if (item.error() != null) {
+                throw new ElasticsearchException("Failed to index product " + product.getId() + ": " + item.error().reason());
+            }
             
-            client.index(request);
-            log.info("Product indexed successfully: {}", product.getId());
+            indexRetryQueue.markWritten(product.getId(), product.getVersion());
+            if (isNoop(item)) {
+                // Index đã có version mới hơn: sự kiện đến muộn, bỏ qua
+                log.debug("Skipped stale index of product {} (version {})", product.getId(), product.getVersion());
+            } else {
+                log.info("Product indexed successfully: {}", product.getId());
+            }
             return true;
+        } catch (ElasticsearchException e) {
+            log.error("Failed to index product: {}", product.getId(), e);
+            throw e;
         } catch (Exception e) {
             log.error("Failed to index product: {}", product.getId(), e);
             throw new ElasticsearchException("Failed to index product: " + product.getId(), e);
@@ -68,19 +102,26 @@ public class ProductIndexingService {
      */
     @CircuitBreaker(name = "elasticsearch", fallbackMethod = "deleteProductFallback")
     @Retry(name = "elasticsearch")
-    public void deleteProduct(String productId) {
+    public boolean deleteProduct(String productId, Long version) {
         try {
             String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
             
-            DeleteRequest request = DeleteRequest.of(r -> r
-                    .index(indexName)
-                    .id(productId));
+            BulkResponseItem item = writeOne(deleteOperation(indexName, productId, version));
+            // 404: document không còn trong index
+            if (item.error() != null && item.status() != 404) {
+                throw new RuntimeException("Failed to delete product " + productId + ": " + item.error().reason());
+            }
             
-            client.delete(request);
-            log.info("Product deleted from index: {}", productId);
+            indexRetryQueue.markWritten(productId, version);
+            if (isNoop(item)) {
+                log.debug("Skipped stale delete of product {} (version {})", productId, version);
+            } else {
+                log.info("Product deleted from index: {}", productId);
+            }
+            return true;
         } catch (Exception e) {
             log.error("Failed to delete product from index: {}", productId, e);
-            throw new RuntimeException("Failed to delete product from index", e);
+            throw e instanceof RuntimeException runtime ? runtime : new RuntimeException("Failed to delete product from index", e);
         }
     }
     
@@ -97,35 +138,12 @@ public class ProductIndexingService {
         try {
             String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
             
-            BulkRequest.Builder bulkRequestBuilder = new BulkRequest.Builder();
+            long bulkStart = System.nanoTime();
+            BulkResponse response = client.bulk(buildBulkIndexRequest(indexName, products));
+            searchMetrics.recordBulk(products.size(), System.nanoTime() - bulkStart, !response.errors());
             
-            for (ProductDocument product : products) {
-                // Đảm bảo có dữ liệu cho auto-suggest
-                if (product.getNameSuggest() == null && product.getName() != null) {
-                    Completion completion = new Completion(Collections.singletonList(product.getName()));
-                    product.setNameSuggest(completion);
-                }
-                
-                // Đảm bảo có giá trị inStock dựa vào stockQuantity
-                if (product.getInStock() == null && product.getStockQuantity() != null) {
-                    product.setInStock(product.getStockQuantity() > 0);
-                }
-                
-                bulkRequestBuilder.operations(op -> op
-                        .index(idx -> idx
-                                .index(indexName)
-                                .id(product.getId())
-                                .document(product)));
-            }
-            
-            BulkResponse response = client.bulk(bulkRequestBuilder.build());
-            
-            if (response.errors()) {
-                log.error("Bulk indexing has errors: {}", 
-                        response.items().stream()
-                                .filter(item -> item.error() != null)
-                                .map(item -> item.id() + ": " + item.error().reason())
-                                .collect(Collectors.joining(", ")));
+            // Item lỗi tạm thời vào retry log, item thành công được đánh dấu đã ghi
+            if (!handleBulkIndexResponse(response, products)) {
                 return false;
             }
             
@@ -138,23 +156,199 @@ public class ProductIndexingService {
     }
     
     /**
-     * Batch processing để xử lý số lượng lớn sản phẩm
+     * Version ghi vào Elasticsearch, cùng cách tính với product-service: updatedAt tính bằng micro giây
+     */
+    public static long toVersion(LocalDateTime timestamp) {
+        Instant instant = timestamp.toInstant(ZoneOffset.UTC);
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000L;
+    }
+    
+    /**
+     * Thao tác index đầy đủ: thay toàn bộ _source nếu version mới hơn, tạo document nếu chưa có
+     */
+    static BulkOperation indexOperation(String indexName, ProductDocument product) {
+        prepareForIndexing(product);
+        Script script = versionedScript(INDEX_SCRIPT, product.getVersion(), "doc", JsonData.of(product));
+        return BulkOperation.of(op -> op.<Map<String, Object>, Void>update(u -> u
+                .index(indexName)
+                .id(product.getId())
+                .retryOnConflict(RETRY_ON_CONFLICT)
+                .action(a -> a.script(script).scriptedUpsert(true).upsert(Map.of()))));
+    }
+    
+    /**
+     * Delta: chỉ ghi các trường thay đổi. Document chưa có thì trả về 404 (không tạo document thiếu trường)
+     */
+    static BulkOperation partialUpdateOperation(String indexName, PartialUpdate update) {
+        Script script = versionedScript(PARTIAL_UPDATE_SCRIPT, update.version(), "fields", JsonData.of(update.fields()));
+        return BulkOperation.of(op -> op.<Map<String, Object>, Void>update(u -> u
+                .index(indexName)
+                .id(update.productId())
+                .retryOnConflict(RETRY_ON_CONFLICT)
+                .action(a -> a.script(script))));
+    }
+    
+    static BulkOperation deleteOperation(String indexName, String productId, Long version) {
+        Script script = versionedScript(DELETE_SCRIPT, version, null, null);
+        return BulkOperation.of(op -> op.<Map<String, Object>, Void>update(u -> u
+                .index(indexName)
+                .id(productId)
+                .retryOnConflict(RETRY_ON_CONFLICT)
+                .action(a -> a.script(script))));
+    }
+    
+    private static Script versionedScript(String source, Long version, String name, JsonData value) {
+        Map<String, JsonData> params = new HashMap<>();
+        if (version != null) {
+            params.put("version", JsonData.of(version));
+        }
+        if (name != null) {
+            params.put(name, value);
+        }
+        return Script.of(s -> s.source(source).params(params));
+    }
+    
+    static boolean isNoop(BulkResponseItem item) {
+        return "noop".equals(item.result());
+    }
+    
+    /**
+     * Lỗi tạm thời: 409 (hết retry_on_conflict khi nhiều update đồng thời), 429 hoặc 5xx
+     */
+    static boolean isRetriable(BulkResponseItem item) {
+        return item.status() == 409 || item.status() == 429 || item.status() >= 500;
+    }
+    
+    private BulkResponseItem writeOne(BulkOperation operation) throws IOException {
+        return client.bulk(b -> b.operations(operation)).items().get(0);
+    }
+    
+    /**
+     * Đảm bảo có dữ liệu cho auto-suggest và giá trị inStock dựa vào stockQuantity
+     */
+    static void prepareForIndexing(ProductDocument product) {
+        if (product.getNameSuggest() == null && product.getName() != null) {
+            Completion completion = new Completion(Collections.singletonList(product.getName()));
+            product.setNameSuggest(completion);
+        }
+        
+        if (product.getInStock() == null && product.getStockQuantity() != null) {
+            product.setInStock(product.getStockQuantity() > 0);
+        }
+    }
+    
+    /**
+     * Danh mục hiện đang được index của các sản phẩm (trước khi ghi sự kiện mới), để xóa cache của
+     * danh mục cũ khi sản phẩm chuyển danh mục. Chỉ đọc trường categoryName; sản phẩm chưa có trong index bị bỏ qua.
+     */
+    @CircuitBreaker(name = "elasticsearch", fallbackMethod = "findIndexedCategoriesFallback")
+    @SuppressWarnings("rawtypes")
+    public Map<String, String> findIndexedCategories(Collection<String> productIds) throws IOException {
+        if (productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
+        MgetResponse<Map> response = client.mget(m -> m
+                .index(indexName)
+                .ids(new ArrayList<>(productIds))
+                .sourceIncludes("categoryName"), Map.class);
+        
+        Map<String, String> categories = new HashMap<>();
+        for (MultiGetResponseItem<Map> item : response.docs()) {
+            if (item.isResult() && item.result().found() && item.result().source() != null) {
+                Object categoryName = item.result().source().get("categoryName");
+                if (categoryName != null) {
+                    categories.put(item.result().id(), categoryName.toString());
+                }
+            }
+        }
+        return categories;
+    }
+    
+    /**
+     * Cập nhật một phần (giá, tồn kho...) cho nhiều sản phẩm bằng bulk update.
+     * Delta cũ hơn document bị script bỏ qua (noop). Delta lỗi tạm thời, hoặc của sản phẩm chưa có trong index
+     * (sự kiện tạo có thể đến sau), được đưa vào retry log; không gọi markWritten vì delta không thay thế
+     * thao tác index/xóa đầy đủ đang chờ.
+     *
+     * @return các delta đã được ghi (không tính noop)
+     */
+    @CircuitBreaker(name = "elasticsearch", fallbackMethod = "bulkPartialUpdateFallback")
+    public List<PartialUpdate> bulkPartialUpdate(List<PartialUpdate> updates) throws IOException {
+        if (updates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
+        BulkRequest.Builder bulkRequestBuilder = new BulkRequest.Builder();
+        for (PartialUpdate update : updates) {
+            bulkRequestBuilder.operations(partialUpdateOperation(indexName, update));
+        }
+        
+        long bulkStart = System.nanoTime();
+        BulkResponse response = client.bulk(bulkRequestBuilder.build());
+        searchMetrics.recordBulk(updates.size(), System.nanoTime() - bulkStart, !response.errors());
+        
+        List<PartialUpdate> applied = new ArrayList<>();
+        List<PartialUpdate> retry = new ArrayList<>();
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            PartialUpdate update = updates.get(i);
+            if (item.error() == null) {
+                if (!isNoop(item)) {
+                    applied.add(update);
+                }
+            } else if (item.status() == 404 || isRetriable(item)) {
+                retry.add(update);
+            } else {
+                log.error("Partial update of product {} failed: {}", item.id(), item.error().reason());
+            }
+        }
+        
+        indexRetryQueue.enqueuePartial(retry);
+        log.debug("Applied {} partial updates, {} queued for retry", applied.size(), retry.size());
+        return applied;
+    }
+    
+    /**
+     * Batch processing để xử lý số lượng lớn sản phẩm.
+     * Các bulk request được gửi qua client bất đồng bộ, tối đa indexing.bulk.max-in-flight request
+     * cùng lúc, nên không chiếm thread nào trong lúc chờ Elasticsearch và không làm ngập bulk queue của ES.
+     * Lô bị lỗi được đưa vào retry log.
      */
     public List<CompletableFuture<Boolean>> batchIndexProducts(List<ProductDocument> products, int batchSize) {
         List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
+        Semaphore inFlight = new Semaphore(Math.max(1, maxBulkInFlight));
         
         for (int i = 0; i < products.size(); i += batchSize) {
             int endIdx = Math.min(i + batchSize, products.size());
             List<ProductDocument> batch = products.subList(i, endIdx);
             
-            CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
-                try {
-                    return bulkIndexProducts(batch);
-                } catch (Exception e) {
-                    log.error("Error in batch indexing", e);
-                    return false;
-                }
-            });
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Batch indexing interrupted, queueing {} remaining products", products.size() - i);
+                products.subList(i, products.size()).forEach(indexRetryQueue::enqueueIndex);
+                break;
+            }
+            
+            long bulkStart = System.nanoTime();
+            CompletableFuture<Boolean> future = asyncClient.bulk(buildBulkIndexRequest(indexName, batch))
+                    .handle((response, error) -> {
+                        inFlight.release();
+                        if (error != null) {
+                            log.error("Async bulk indexing of {} products failed: {}", batch.size(), error.getMessage());
+                            searchMetrics.recordBulk(batch.size(), System.nanoTime() - bulkStart, false);
+                            batch.forEach(indexRetryQueue::enqueueIndex);
+                            return false;
+                        }
+                        searchMetrics.recordBulk(batch.size(), System.nanoTime() - bulkStart, !response.errors());
+                        return handleBulkIndexResponse(response, batch);
+                    });
             
             futures.add(future);
         }
@@ -162,21 +356,70 @@ public class ProductIndexingService {
         return futures;
     }
     
-    // Fallback methods
+    private static BulkRequest buildBulkIndexRequest(String indexName, List<ProductDocument> products) {
+        BulkRequest.Builder bulkRequestBuilder = new BulkRequest.Builder();
+        for (ProductDocument product : products) {
+            bulkRequestBuilder.operations(indexOperation(indexName, product));
+        }
+        return bulkRequestBuilder.build();
+    }
+    
+    /**
+     * Xử lý kết quả bulk index: item lỗi tạm thời vào retry log, noop (version cũ) coi như đã ghi
+     */
+    private boolean handleBulkIndexResponse(BulkResponse response, List<ProductDocument> products) {
+        boolean success = true;
+        List<BulkResponseItem> items = response.items();
+        for (int i = 0; i < items.size(); i++) {
+            BulkResponseItem item = items.get(i);
+            if (item.error() == null) {
+                indexRetryQueue.markWritten(item.id(), products.get(i).getVersion());
+            } else {
+                success = false;
+                if (isRetriable(item)) {
+                    indexRetryQueue.enqueueIndex(products.get(i));
+                } else {
+                    log.error("Bulk indexing of product {} failed: {}", item.id(), item.error().reason());
+                }
+            }
+        }
+        return success;
+    }
+    
+    // Fallback methods: lưu thao tác vào retry log để replay khi Elasticsearch phục hồi
     public boolean indexProductFallback(ProductDocument product, Exception ex) {
         log.error("Fallback for indexProduct: {}", ex.getMessage());
-        // Có thể lưu vào queue để xử lý lại sau
+        indexRetryQueue.enqueueIndex(product);
         return false;
     }
     
-    public boolean deleteProductFallback(String productId, Exception ex) {
+    public boolean deleteProductFallback(String productId, Long version, Exception ex) {
         log.error("Fallback for deleteProduct: {}", ex.getMessage());
+        indexRetryQueue.enqueueDelete(productId, version);
         return false;
     }
     
     public boolean bulkIndexProductsFallback(List<ProductDocument> products, Exception ex) {
         log.error("Fallback for bulkIndexProducts: {}", ex.getMessage());
-        // Có thể thử index từng sản phẩm một
+        products.forEach(indexRetryQueue::enqueueIndex);
         return false;
     }
-} 
\ No newline at end of file
+    
+    public Map<String, String> findIndexedCategoriesFallback(Collection<String> productIds, Exception ex) {
+        // Không chặn việc index: danh mục cũ (nếu có) hết hạn theo TTL của cache
+        log.warn("Could not read indexed categories of {} products: {}", productIds.size(), ex.getMessage());
+        return Collections.emptyMap();
+    }
+    
+    public List<PartialUpdate> bulkPartialUpdateFallback(List<PartialUpdate> updates, Exception ex) {
+        log.error("Fallback for bulkPartialUpdate: {}", ex.getMessage());
+        indexRetryQueue.enqueuePartial(updates);
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Delta của một sản phẩm: các trường cần ghi đè và version của sự kiện
+     */
+    public record PartialUpdate(String productId, long version, String categoryName, Map<String, Object> fields) {
+    }
+}
\ No newline at end of file
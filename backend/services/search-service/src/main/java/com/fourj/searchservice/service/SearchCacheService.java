@@ -0,0 +1,181 @@
+package com.fourj.searchservice.service;
+
+import com.fourj.searchservice.config.RedisConfig;
+import com.fourj.searchservice.dto.SearchResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Cache 2 tầng cho kết quả tìm kiếm: L1 trong bộ nhớ (Caffeine) và L2 trên Redis.
+ * Mỗi entry được gắn tag theo danh mục để có thể xóa khi sản phẩm thay đổi.
+ * Mỗi sự kiện chỉ được một replica xử lý (cùng consumer group), nên invalidate chỉ xóa L2 dùng chung và L1
+ * của replica đó; L1 của các replica khác không được broadcast mà hết hạn theo cache.hot-keys-ttl (vài giây),
+ * đó là giới hạn độ trễ sau khi một sản phẩm thay đổi.
+ */
+@Service
+@Slf4j
+public class SearchCacheService {
+
+    /** Tag dùng cho các truy vấn không lọc theo danh mục */
+    public static final String ALL_CATEGORIES_TAG = "_all";
+
+    private static final String TAG_KEY_PREFIX = "search:tag:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Duration redisTtl;
+    private final Cache<String, CachedSearch> localCache;
+
+    private final Counter l1Hits;
+    private final Counter l1Misses;
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final Timer lookupTimer;
+
+    public SearchCacheService(RedisTemplate<String, Object> redisTemplate,
+                              RedisConfig redisConfig,
+                              MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.redisTtl = Duration.ofSeconds(redisConfig.getSearchResultsTtl());
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(redisConfig.getLocalMaxSize())
+                .expireAfterWrite(Duration.ofSeconds(redisConfig.getHotKeysTtl()))
+                .build();
+
+        this.l1Hits = cacheCounter(meterRegistry, "l1", "hit");
+        this.l1Misses = cacheCounter(meterRegistry, "l1", "miss");
+        this.l2Hits = cacheCounter(meterRegistry, "l2", "hit");
+        this.l2Misses = cacheCounter(meterRegistry, "l2", "miss");
+        this.lookupTimer = Timer.builder("search.cache.lookup")
+                .description("Latency of search cache lookups across L1 and L2")
+                .register(meterRegistry);
+        Gauge.builder("search.cache.hit.ratio", this, SearchCacheService::hitRatio)
+                .description("Share of search requests served from L1 or L2 cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tra cứu kết quả theo key: L1 trước, sau đó Redis (và nạp lại vào L1 khi hit)
+     */
+    public Optional<SearchResponse> get(String key) {
+        return lookupTimer.record(() -> {
+            CachedSearch local = localCache.getIfPresent(key);
+            if (local != null) {
+                l1Hits.increment();
+                return Optional.of(local.response());
+            }
+            l1Misses.increment();
+
+            try {
+                Object cached = redisTemplate.opsForValue().get(key);
+                if (cached instanceof SearchResponse response) {
+                    l2Hits.increment();
+                    localCache.put(key, new CachedSearch(response, Set.of(ALL_CATEGORIES_TAG)));
+                    return Optional.of(response);
+                }
+            } catch (Exception e) {
+                log.warn("Redis lookup failed for key {}: {}", key, e.getMessage());
+            }
+            l2Misses.increment();
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * Lưu kết quả vào cả 2 tầng và đăng ký key vào tag của từng danh mục
+     */
+    public void put(String key, Collection<String> categories, SearchResponse response) {
+        Set<String> tags = toTags(categories);
+        localCache.put(key, new CachedSearch(response, tags));
+
+        try {
+            redisTemplate.opsForValue().set(key, response, redisTtl);
+            for (String tag : tags) {
+                String tagKey = TAG_KEY_PREFIX + tag;
+                redisTemplate.opsForSet().add(tagKey, key);
+                redisTemplate.expire(tagKey, redisTtl);
+            }
+        } catch (Exception e) {
+            log.warn("Redis write failed for key {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Xóa các kết quả có thể bị ảnh hưởng khi một sản phẩm trong danh mục thay đổi.
+     * Truy vấn không lọc danh mục luôn bị xóa vì chúng chứa sản phẩm của mọi danh mục.
+     */
+    public void invalidateCategory(String categoryName) {
+        invalidateCategories(categoryName == null ? List.of() : List.of(categoryName));
+    }
+
+    /**
+     * Như invalidateCategory cho nhiều danh mục (ví dụ danh mục cũ và mới của sản phẩm vừa chuyển danh mục),
+     * tag "_all" chỉ bị xóa một lần
+     */
+    public void invalidateCategories(Collection<String> categoryNames) {
+        Set<String> tags = new LinkedHashSet<>();
+        tags.add(ALL_CATEGORIES_TAG);
+        for (String categoryName : categoryNames) {
+            if (categoryName != null && !categoryName.isBlank()) {
+                tags.add(categoryName);
+            }
+        }
+
+        localCache.asMap().values().removeIf(entry -> tags.stream().anyMatch(entry.tags()::contains));
+
+        try {
+            List<String> keysToDelete = new ArrayList<>();
+            for (String tag : tags) {
+                String tagKey = TAG_KEY_PREFIX + tag;
+                Set<Object> members = redisTemplate.opsForSet().members(tagKey);
+                if (members != null) {
+                    members.forEach(member -> keysToDelete.add(String.valueOf(member)));
+                }
+                keysToDelete.add(tagKey);
+            }
+            redisTemplate.delete(keysToDelete);
+            log.debug("Invalidated {} search cache keys for categories {}", keysToDelete.size(), tags);
+        } catch (Exception e) {
+            log.warn("Redis invalidation failed for categories {}: {}", tags, e.getMessage());
+        }
+    }
+
+    private double hitRatio() {
+        double hits = l1Hits.count() + l2Hits.count();
+        double total = hits + l2Misses.count();
+        return total == 0 ? 0.0 : hits / total;
+    }
+
+    private static Set<String> toTags(Collection<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            return Set.of(ALL_CATEGORIES_TAG);
+        }
+        return categories.stream().collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static Counter cacheCounter(MeterRegistry registry, String tier, String result) {
+        return Counter.builder("search.cache.requests")
+                .description("Search cache lookups by tier and result")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private record CachedSearch(SearchResponse response, Set<String> tags) {
+    }
+}
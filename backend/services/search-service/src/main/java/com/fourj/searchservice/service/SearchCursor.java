@@ -0,0 +1,86 @@
+package com.fourj.searchservice.service;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fourj.searchservice.exception.SearchServiceException;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Con trỏ phân trang cho chế độ search_after: point-in-time ID và sort values của hit cuối cùng.
+ * Được trả về cho client dưới dạng chuỗi base64url không cần hiểu nội dung.
+ */
+record SearchCursor(String pitId, List<FieldValue> searchAfter) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    String encode() {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("pit", pitId);
+        ArrayNode after = node.putArray("after");
+        for (FieldValue value : searchAfter) {
+            switch (value._kind()) {
+                case Long -> after.add(value.longValue());
+                case Double -> after.add(value.doubleValue());
+                case Boolean -> after.add(value.booleanValue());
+                case String -> after.add(value.stringValue());
+                default -> after.addNull();
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(node.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static SearchCursor decode(String cursor) {
+        try {
+            JsonNode node = MAPPER.readTree(Base64.getUrlDecoder().decode(cursor));
+            String pitId = node.path("pit").asText(null);
+            if (!StringUtils.hasText(pitId) || !node.path("after").isArray()) {
+                throw invalid(null);
+            }
+
+            List<FieldValue> searchAfter = new ArrayList<>();
+            for (JsonNode value : node.path("after")) {
+                if (value.isIntegralNumber()) {
+                    searchAfter.add(FieldValue.of(value.longValue()));
+                } else if (value.isNumber()) {
+                    searchAfter.add(FieldValue.of(value.doubleValue()));
+                } else if (value.isBoolean()) {
+                    searchAfter.add(FieldValue.of(value.booleanValue()));
+                } else if (value.isTextual()) {
+                    searchAfter.add(FieldValue.of(value.textValue()));
+                } else {
+                    searchAfter.add(FieldValue.NULL);
+                }
+            }
+            return new SearchCursor(pitId, searchAfter);
+        } catch (SearchServiceException e) {
+            throw e;
+        } catch (Exception e) {
+            throw invalid(e);
+        }
+    }
+
+    /**
+     * Lỗi khi search trên PIT của cursor: 404 nghĩa là PIT đã hết keep-alive (hoặc đã đóng ở trang cuối)
+     * và được trả cho client thành lỗi 400, các lỗi khác giữ nguyên
+     */
+    static RuntimeException translateSearchError(ElasticsearchException e) {
+        if (e.status() == 404) {
+            return new SearchServiceException("Search cursor has expired", "CURSOR_EXPIRED", 400, e);
+        }
+        return e;
+    }
+
+    private static SearchServiceException invalid(Throwable cause) {
+        return new SearchServiceException("Invalid search cursor", "INVALID_CURSOR", 400, cause);
+    }
+}
@@ -0,0 +1,117 @@
+package com.fourj.searchservice.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các metric Prometheus của search-service: thời gian truy vấn phía Elasticsearch (took)
+ * so với phía client, số hits, trạng thái circuit breaker, kích thước/thời gian bulk
+ * và độ trễ từ lúc sản phẩm được cập nhật đến lúc được index.
+ */
+@Component
+public class SearchMetrics {
+
+    private static final String ELASTICSEARCH_BREAKER = "elasticsearch";
+
+    private final Timer esTook;
+    private final Timer esClientLatency;
+    private final DistributionSummary totalHits;
+    private final DistributionSummary returnedHits;
+    private final DistributionSummary bulkSize;
+    private final Timer bulkSuccess;
+    private final Timer bulkFailure;
+    private final Timer indexingLag;
+
+    public SearchMetrics(MeterRegistry meterRegistry, ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry) {
+        this.esTook = Timer.builder("search.es.took")
+                .description("Query time reported by Elasticsearch (took)")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.esClientLatency = Timer.builder("search.es.client.latency")
+                .description("Round-trip time of search calls measured by the client, including network and parsing")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.totalHits = DistributionSummary.builder("search.hits.total")
+                .description("Total matching documents per search")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.returnedHits = DistributionSummary.builder("search.hits.returned")
+                .description("Documents returned per search page")
+                .register(meterRegistry);
+        this.bulkSize = DistributionSummary.builder("search.indexing.bulk.size")
+                .description("Documents per bulk indexing request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.bulkSuccess = bulkTimer(meterRegistry, "success");
+        this.bulkFailure = bulkTimer(meterRegistry, "failure");
+        this.indexingLag = Timer.builder("search.indexing.lag")
+                .description("Time from product updatedAt to the document being written to Elasticsearch "
+                        + "(searchable after the next refresh)")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        // 0 = CLOSED, 1 = HALF_OPEN, 2 = OPEN, -1 = trạng thái khác (DISABLED, FORCED_OPEN...)
+        CircuitBreakerRegistry registry = circuitBreakerRegistry.getIfAvailable();
+        if (registry != null) {
+            CircuitBreaker breaker = registry.circuitBreaker(ELASTICSEARCH_BREAKER);
+            Gauge.builder("search.circuitbreaker.state", breaker, SearchMetrics::stateValue)
+                    .description("State of the Elasticsearch circuit breaker (0 closed, 1 half-open, 2 open)")
+                    .tag("name", ELASTICSEARCH_BREAKER)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Ghi nhận một lần search: took của Elasticsearch, thời gian phía client và số hits
+     */
+    public void recordSearch(long tookMillis, long clientNanos, long total, int returned) {
+        esTook.record(tookMillis, TimeUnit.MILLISECONDS);
+        esClientLatency.record(clientNanos, TimeUnit.NANOSECONDS);
+        totalHits.record(total);
+        returnedHits.record(returned);
+    }
+
+    public void recordBulk(int size, long durationNanos, boolean success) {
+        bulkSize.record(size);
+        (success ? bulkSuccess : bulkFailure).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Độ trễ từ updatedAt (do product-service gán) đến lúc index xong
+     */
+    public void recordIndexingLag(LocalDateTime updatedAt) {
+        if (updatedAt == null) {
+            return;
+        }
+        Duration lag = Duration.between(updatedAt, LocalDateTime.now());
+        // Lệch đồng hồ giữa các service có thể cho giá trị âm
+        indexingLag.record(lag.isNegative() ? Duration.ZERO : lag);
+    }
+
+    private static Timer bulkTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("search.indexing.bulk.duration")
+                .description("Duration of bulk indexing requests")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static double stateValue(CircuitBreaker breaker) {
+        return switch (breaker.getState()) {
+            case CLOSED -> 0;
+            case HALF_OPEN -> 1;
+            case OPEN -> 2;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.fourj.searchservice.service;
+
+import com.fourj.searchservice.dto.SearchResponse;
+import com.fourj.searchservice.exception.ElasticsearchException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Gộp các request tìm kiếm giống nhau đang chạy đồng thời (single-flight).
+ * Request đầu tiên với một key sẽ gọi Elasticsearch, các request đến sau trong lúc
+ * nó chưa xong sẽ chờ và dùng chung kết quả thay vì gửi thêm truy vấn.
+ * Thời gian chờ bị giới hạn (mặc định bằng socket timeout của Elasticsearch); quá hạn thì request
+ * tự gửi truy vấn riêng, nên một truy vấn bị treo không kéo theo mọi request giống nó.
+ */
+@Component
+@Slf4j
+public class SearchRequestCoalescer {
+
+    private final ConcurrentMap<String, CompletableFuture<SearchResponse>> inFlight = new ConcurrentHashMap<>();
+    private final long maxWaitMs;
+    private final Counter coalescedRequests;
+    private final Counter waitTimeouts;
+
+    public SearchRequestCoalescer(MeterRegistry meterRegistry,
+                                  @Value("${search.coalescing.max-wait-ms:${elasticsearch.socket-timeout:10000}}") long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+        this.coalescedRequests = Counter.builder("search.coalesced.requests")
+                .description("Search requests served by joining an identical in-flight request")
+                .register(meterRegistry);
+        this.waitTimeouts = Counter.builder("search.coalesced.timeouts")
+                .description("Coalesced search requests that stopped waiting and ran their own query")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Thực thi call cho key, hoặc chờ kết quả của call đang chạy với cùng key
+     */
+    public SearchResponse execute(String key, SearchCall call) throws IOException {
+        CompletableFuture<SearchResponse> promise = new CompletableFuture<>();
+        CompletableFuture<SearchResponse> existing = inFlight.putIfAbsent(key, promise);
+
+        if (existing != null) {
+            coalescedRequests.increment();
+            log.debug("Joining in-flight search for key: {}", key);
+            try {
+                return await(existing);
+            } catch (TimeoutException e) {
+                waitTimeouts.increment();
+                log.warn("In-flight search for key {} still running after {} ms, executing independently", key, maxWaitMs);
+                return call.execute();
+            }
+        }
+
+        try {
+            SearchResponse response = call.execute();
+            promise.complete(response);
+            return response;
+        } catch (Throwable t) {
+            // Luôn hoàn thành promise để các request đang chờ không bị treo
+            promise.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, promise);
+        }
+    }
+
+    private SearchResponse await(CompletableFuture<SearchResponse> future) throws IOException, TimeoutException {
+        try {
+            return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("Interrupted while waiting for in-flight search", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ElasticsearchException("In-flight search failed", cause);
+        }
+    }
+
+    @FunctionalInterface
+    public interface SearchCall {
+        SearchResponse execute() throws IOException;
+    }
+}
@@ -1,15 +1,19 @@
 package com.fourj.searchservice.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.FieldValue;
-import co.elastic.clients.elasticsearch._types.Result;
 import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
 import co.elastic.clients.elasticsearch._types.aggregations.AggregationRange;
+import co.elastic.clients.elasticsearch._types.aggregations.TermsAggregationCollectMode;
 import co.elastic.clients.elasticsearch._types.query_dsl.*;
 import co.elastic.clients.elasticsearch.core.*;
+import co.elastic.clients.elasticsearch.core.search.CompletionContext;
+import co.elastic.clients.elasticsearch.core.search.CompletionSuggestOption;
 import co.elastic.clients.elasticsearch.core.search.HighlightField;
 import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.Suggestion;
 import java.util.stream.Collectors;
 
 import co.elastic.clients.json.JsonData;
@@ -17,19 +21,25 @@ import com.fourj.searchservice.config.ElasticsearchConfig;
 import com.fourj.searchservice.document.ProductDocument;
 import com.fourj.searchservice.dto.SearchRequest.PriceRange;
 import com.fourj.searchservice.dto.SearchResponse.FacetEntry;
+import com.fourj.searchservice.exception.SearchServiceException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -46,8 +56,39 @@ import com.fourj.searchservice.dto.ProductIndexDto;
 public class SearchService {
     
     private final ElasticsearchClient client;
+    private final ElasticsearchAsyncClient asyncClient;
     private final ElasticsearchConfig elasticsearchConfig;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final SearchCacheService searchCacheService;
+    private final SearchRequestCoalescer searchRequestCoalescer;
+    private final IndexManagementService indexManagementService;
+    private final PriceFacetService priceFacetService;
+    private final SearchMetrics searchMetrics;
+    private final PersonalizationService personalizationService;
+    private final ProductIndexingService productIndexingService;
+    
+    private static final String NAME_SUGGESTER = "name-suggest";
+    private static final String BRAND_ATTRIBUTE = "brand";
+    private static final String ATTRIBUTES_AGG = "attributes";
+    private static final String ATTRIBUTE_NAMES_AGG = "names";
+    private static final String ATTRIBUTE_VALUES_AGG = "values";
+    private static final String ATTRIBUTE_FACET_PREFIX = "attr:";
+    private static final int ATTRIBUTE_FACET_NAMES = 20;
+    private static final int ATTRIBUTE_FACET_VALUES = 30;
+    private static final String CURSOR_KEEP_ALIVE = "2m";
+    static final List<String> FULL_SOURCE_FIELDS = List.of(
+            "id", "name", "description", "price", "imageUrl", "categoryName", "active", "inStock", "rating");
+    static final List<String> COMPACT_SOURCE_FIELDS = List.of(
+            "id", "name", "price", "imageUrl", "rating", "inStock", "categoryName");
+    private static final Set<String> HIGHLIGHTABLE_FIELDS = Set.of("name", "description");
+    
+    @Value("${recommendation.boost:2.0}")
+    private float recommendationBoost;
+    
+    // Cache cho các prefix được gõ nhiều, tránh gọi Elasticsearch ở mỗi phím gõ
+    private final Cache<String, List<String>> suggestionCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofSeconds(60))
+            .build();
     
     /**
      * Tìm kiếm sản phẩm theo các tiêu chí
@@ -60,67 +101,51 @@ public class SearchService {
                 request.getQuery(), request.getCategories());
         
         Instant start = Instant.now();
+        List<String> boostIds = recommendedProductIds(request);
+        
+        // Chế độ cursor: mỗi client có PIT riêng nên không đi qua cache và coalescer
+        if (request.isUseCursor() || StringUtils.hasText(request.getCursor())) {
+            return executeCursorSearch(request, boostIds, start);
+        }
+        
+        // Kiểm tra cache (L1 trong bộ nhớ, L2 Redis) trước khi gọi Elasticsearch
+        String cacheKey = generateCacheKey(request, boostIds);
+        Optional<com.fourj.searchservice.dto.SearchResponse> cached = searchCacheService.get(cacheKey);
+        if (cached.isPresent()) {
+            log.debug("Search cache hit for key: {}", cacheKey);
+            return cached.get();
+        }
         
-        // Tìm kiếm từ Elasticsearch
+        // Cache miss: các request giống nhau đang chạy đồng thời chỉ gọi Elasticsearch một lần
+        return searchRequestCoalescer.execute(cacheKey, () -> executeSearch(request, boostIds, cacheKey, start));
+    }
+    
+    /**
+     * Gọi Elasticsearch và lưu kết quả vào cache
+     */
+    private com.fourj.searchservice.dto.SearchResponse executeSearch(
+            com.fourj.searchservice.dto.SearchRequest request,
+            List<String> boostIds,
+            String cacheKey,
+            Instant start) throws IOException {
+        long clientStart = System.nanoTime();
         SearchResponse<ProductIndexDto> response = client.search(s -> {
             SearchRequest.Builder builder = new SearchRequest.Builder();
             builder.index(elasticsearchConfig.getIndexSettings().getProducts().getName());
-            builder.query(buildQuery(request));
+            builder.query(personalize(buildQuery(request), boostIds));
             builder.from(request.getFrom());
             builder.size(request.getSize());
+            applySourceFilter(builder, request);
+            applyHighlight(builder, request);
+            applySort(builder, request);
             
-            // Highlight settings
-            Map<String, HighlightField> highlightFields = new HashMap<>();
-            highlightFields.put("name", HighlightField.of(h -> h));
-            highlightFields.put("description", HighlightField.of(h -> h));
-            
-            builder.highlight(h -> h
-                    .fields(highlightFields)
-                    .preTags("<em>")
-                    .postTags("</em>")
-                    .requireFieldMatch(false));
-            
-            // Sorting tối giản
-            if (request.getSortOption() != null) {
-                switch (request.getSortOption()) {
-                    case PRICE_ASC:
-                        builder.sort(s1 -> s1.field(f -> f.field("price").order(SortOrder.Asc)));
-                        break;
-                    case PRICE_DESC:
-                        builder.sort(s1 -> s1.field(f -> f.field("price").order(SortOrder.Desc)));
-                        break;
-                    case RELEVANCE:
-                    default:
-                        builder.sort(s1 -> s1.score(sc -> sc.order(SortOrder.Desc)));
-                        break;
-                }
-            } else {
-                builder.sort(s1 -> s1.score(sc -> sc.order(SortOrder.Desc)));
-            }
-            
-            // Aggregations cơ bản
             if (request.isIncludeAggregations()) {
-                // Aggregation cho danh mục
-                builder.aggregations("categories", a -> a
-                        .terms(t -> t.field("categoryName").size(50)));
-                
-                // Aggregation cho khoảng giá
-                builder.aggregations("price_ranges", a -> a
-                        .range(t -> t
-                                .field("price")
-                                .ranges(
-                                        AggregationRange.of(r -> r.to(500000.0)),
-                                        AggregationRange.of(r -> r.from(500000.0).to(1000000.0)),
-                                        AggregationRange.of(r -> r.from(1000000.0).to(2000000.0)),
-                                        AggregationRange.of(r -> r.from(2000000.0).to(5000000.0)),
-                                        AggregationRange.of(r -> r.from(5000000.0))
-                                )
-                        )
-                );
+                applyAggregations(builder, request);
             }
             
             return builder;
         }, ProductIndexDto.class);
+        recordSearchMetrics(response, clientStart);
 
         assert response.hits().total() != null;
         log.info("Search returned {} hits for query: {}",
@@ -128,9 +153,243 @@ public class SearchService {
         
         // Chuyển đổi kết quả 
         com.fourj.searchservice.dto.SearchResponse result = convertToSearchResponse(response, request, start);
+        searchCacheService.put(cacheKey, request.getCategories(), result);
         return result;
     }
     
+    /**
+     * Phân trang bằng search_after trên một point-in-time: chi phí mỗi trang không phụ thuộc
+     * vào độ sâu và không bị giới hạn bởi max_result_window.
+     * Trang đầu mở PIT mới, các trang sau dùng PIT và sort values lưu trong cursor.
+     * Kết quả không được cache vì mỗi cursor gắn với một PIT riêng.
+     */
+    private com.fourj.searchservice.dto.SearchResponse executeCursorSearch(
+            com.fourj.searchservice.dto.SearchRequest request,
+            List<String> boostIds,
+            Instant start) throws IOException {
+        boolean firstPage = !StringUtils.hasText(request.getCursor());
+        SearchCursor cursor = firstPage ? null : SearchCursor.decode(request.getCursor());
+        String pitId = firstPage
+                ? client.openPointInTime(o -> o
+                        .index(elasticsearchConfig.getIndexSettings().getProducts().getName())
+                        .keepAlive(k -> k.time(CURSOR_KEEP_ALIVE))).id()
+                : cursor.pitId();
+        
+        SearchResponse<ProductIndexDto> response;
+        long clientStart = System.nanoTime();
+        try {
+            response = client.search(s -> {
+                SearchRequest.Builder builder = new SearchRequest.Builder();
+                // Với PIT không được chỉ định index; ES tự thêm tiebreaker _shard_doc vào sort
+                builder.pit(p -> p.id(pitId).keepAlive(k -> k.time(CURSOR_KEEP_ALIVE)));
+                builder.query(personalize(buildQuery(request), boostIds));
+                builder.size(request.getSize());
+                applySourceFilter(builder, request);
+                applyHighlight(builder, request);
+                applySort(builder, request);
+                
+                if (cursor != null) {
+                    builder.searchAfter(cursor.searchAfter());
+                }
+                
+                // Facets chỉ tính ở trang đầu, các trang sau chỉ lấy hits
+                if (firstPage && request.isIncludeAggregations()) {
+                    applyAggregations(builder, request);
+                }
+                
+                return builder;
+            }, ProductIndexDto.class);
+        } catch (co.elastic.clients.elasticsearch._types.ElasticsearchException e) {
+            throw SearchCursor.translateSearchError(e);
+        }
+        recordSearchMetrics(response, clientStart);
+        
+        List<Hit<ProductIndexDto>> hits = response.hits().hits();
+        String nextPitId = response.pitId() != null ? response.pitId() : pitId;
+        String nextCursor = null;
+        
+        if (hits.size() >= request.getSize() && !hits.isEmpty()) {
+            nextCursor = new SearchCursor(nextPitId, hits.get(hits.size() - 1).sort()).encode();
+        } else {
+            // Trang cuối: đóng PIT ngay thay vì chờ hết keep-alive
+            closePointInTime(nextPitId);
+        }
+        
+        com.fourj.searchservice.dto.SearchResponse result = convertToSearchResponse(response, request, start);
+        result.setNextCursor(nextCursor);
+        return result;
+    }
+    
+    /**
+     * Sản phẩm gợi ý cho user (nếu đã có trong cache của PersonalizationService).
+     * Chỉ áp dụng khi sắp xếp theo độ liên quan, các kiểu sort khác không dùng score.
+     */
+    private List<String> recommendedProductIds(com.fourj.searchservice.dto.SearchRequest request) {
+        com.fourj.searchservice.dto.SearchRequest.SortOption sort = request.getSortOption();
+        if (sort != null && sort != com.fourj.searchservice.dto.SearchRequest.SortOption.RELEVANCE) {
+            return Collections.emptyList();
+        }
+        return personalizationService.getRecommendedProductIds(request.getUserId());
+    }
+    
+    /**
+     * Nhân score của các sản phẩm được gợi ý cho user với recommendation.boost.
+     * Chỉ tăng thứ hạng, không lọc: tập kết quả và facets giữ nguyên.
+     */
+    private Query personalize(Query query, List<String> boostIds) {
+        if (boostIds.isEmpty()) {
+            return query;
+        }
+        return FunctionScoreQuery.of(f -> f
+                .query(query)
+                .functions(fn -> fn
+                        .filter(IdsQuery.of(i -> i.values(boostIds))._toQuery())
+                        .weight((double) recommendationBoost))
+                .scoreMode(FunctionScoreMode.Multiply)
+                .boostMode(FunctionBoostMode.Multiply))
+                ._toQuery();
+    }
+    
+    private void recordSearchMetrics(SearchResponse<ProductIndexDto> response, long clientStart) {
+        long total = response.hits().total() != null ? response.hits().total().value() : 0;
+        searchMetrics.recordSearch(response.took(), System.nanoTime() - clientStart,
+                total, response.hits().hits().size());
+    }
+    
+    /**
+     * Đóng PIT bất đồng bộ: trang cuối không phải chờ thêm một round-trip tới Elasticsearch
+     */
+    private void closePointInTime(String pitId) {
+        asyncClient.closePointInTime(c -> c.id(pitId))
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.warn("Failed to close point-in-time: {}", error.getMessage());
+                    }
+                });
+    }
+    
+    /**
+     * Chỉ lấy các trường trong _source mà response cần: chế độ compact cho trang danh sách,
+     * còn lại là các trường của ProductIndexDto (bỏ attributes, nameSuggest, images...)
+     */
+    private void applySourceFilter(SearchRequest.Builder builder, com.fourj.searchservice.dto.SearchRequest request) {
+        List<String> includes = request.isCompact() ? COMPACT_SOURCE_FIELDS : FULL_SOURCE_FIELDS;
+        builder.source(src -> src.filter(f -> f.includes(includes)));
+    }
+    
+    /**
+     * Highlight chỉ các trường client yêu cầu; không yêu cầu thì không highlight
+     */
+    private void applyHighlight(SearchRequest.Builder builder, com.fourj.searchservice.dto.SearchRequest request) {
+        List<String> requested = highlightFields(request);
+        if (requested.isEmpty()) {
+            return;
+        }
+        
+        Map<String, HighlightField> highlightFields = new HashMap<>();
+        requested.forEach(field -> highlightFields.put(field, HighlightField.of(h -> h)));
+        
+        builder.highlight(h -> h
+                .fields(highlightFields)
+                .preTags("<em>")
+                .postTags("</em>")
+                .requireFieldMatch(false));
+    }
+    
+    private static List<String> highlightFields(com.fourj.searchservice.dto.SearchRequest request) {
+        if (request.getHighlightFields() == null || !StringUtils.hasText(request.getQuery())) {
+            return Collections.emptyList();
+        }
+        return request.getHighlightFields().stream()
+                .filter(HIGHLIGHTABLE_FIELDS::contains)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+    
+    private void applySort(SearchRequest.Builder builder, com.fourj.searchservice.dto.SearchRequest request) {
+        if (request.getSortOption() != null) {
+            switch (request.getSortOption()) {
+                case PRICE_ASC:
+                    builder.sort(s1 -> s1.field(f -> f.field("price").order(SortOrder.Asc)));
+                    break;
+                case PRICE_DESC:
+                    builder.sort(s1 -> s1.field(f -> f.field("price").order(SortOrder.Desc)));
+                    break;
+                case NEWEST:
+                    // createdAt có doc values, và có thể trùng với index sort nếu bật sort-by-created-at
+                    builder.sort(s1 -> s1.field(f -> f.field("createdAt").order(SortOrder.Desc)));
+                    break;
+                case BEST_SELLING:
+                    builder.sort(s1 -> s1.field(f -> f
+                            .field("soldCount")
+                            .order(SortOrder.Desc)
+                            .missing(FieldValue.of("_last"))));
+                    builder.sort(s1 -> s1.score(sc -> sc.order(SortOrder.Desc)));
+                    break;
+                case HIGHEST_RATED:
+                    builder.sort(s1 -> s1.field(f -> f
+                            .field("rating")
+                            .order(SortOrder.Desc)
+                            .missing(FieldValue.of("_last"))));
+                    builder.sort(s1 -> s1.field(f -> f
+                            .field("reviewCount")
+                            .order(SortOrder.Desc)
+                            .missing(FieldValue.of("_last"))));
+                    break;
+                case RELEVANCE:
+                default:
+                    builder.sort(s1 -> s1.score(sc -> sc.order(SortOrder.Desc)));
+                    break;
+            }
+        } else {
+            builder.sort(s1 -> s1.score(sc -> sc.order(SortOrder.Desc)));
+        }
+    }
+    
+    private void applyAggregations(SearchRequest.Builder builder, com.fourj.searchservice.dto.SearchRequest request) {
+        // Aggregation cho danh mục
+        builder.aggregations("categories", a -> a
+                .terms(t -> t.field("categoryName").size(50)));
+        
+        // Aggregation cho khoảng giá, mốc giá theo phân bố giá của các danh mục đang lọc
+        builder.aggregations("price_ranges", a -> a
+                .range(t -> t
+                        .field("price")
+                        .ranges(priceRanges(priceFacetService.getBoundaries(request.getCategories())))
+                )
+        );
+        
+        // Facet động theo thuộc tính: tên thuộc tính -> các giá trị phổ biến.
+        // breadth_first để không sinh tổ hợp tên x giá trị khi số giá trị rất lớn
+        builder.aggregations(ATTRIBUTES_AGG, a -> a
+                .nested(n -> n.path("attributes"))
+                .aggregations(ATTRIBUTE_NAMES_AGG, an -> an
+                        .terms(t -> t
+                                .field("attributes.name")
+                                .size(ATTRIBUTE_FACET_NAMES)
+                                .collectMode(TermsAggregationCollectMode.BreadthFirst))
+                        .aggregations(ATTRIBUTE_VALUES_AGG, av -> av
+                                .terms(t -> t
+                                        .field("attributes.value")
+                                        .size(ATTRIBUTE_FACET_VALUES)))));
+    }
+    
+    /**
+     * Chuyển các mốc giá [b1, b2, ..., bn] thành các khoảng (<b1, b1-b2, ..., >=bn)
+     */
+    private static List<AggregationRange> priceRanges(List<Double> boundaries) {
+        List<AggregationRange> ranges = new ArrayList<>(boundaries.size() + 1);
+        ranges.add(AggregationRange.of(r -> r.to(boundaries.get(0))));
+        for (int i = 1; i < boundaries.size(); i++) {
+            double from = boundaries.get(i - 1);
+            double to = boundaries.get(i);
+            ranges.add(AggregationRange.of(r -> r.from(from).to(to)));
+        }
+        ranges.add(AggregationRange.of(r -> r.from(boundaries.get(boundaries.size() - 1))));
+        return ranges;
+    }
+    
     /**
      * Xây dựng query đơn giản cho tìm kiếm cơ bản
      */
@@ -153,10 +412,11 @@ public class SearchService {
                     .fuzziness("AUTO"))
                     ._toQuery());
 
-            // 2. Wildcard query để tìm với dấu *
+            // 2. Tìm chuỗi con trên trường name.wildcard (kiểu wildcard, đánh index bằng n-gram)
+            //    thay vì wildcard có * ở đầu trên trường text vốn phải quét toàn bộ term dictionary
             boolQuery.should(WildcardQuery.of(w -> w
-                    .field("name")
-                    .value("*" + queryText + "*")
+                    .field("name.wildcard")
+                    .value("*" + escapeWildcard(queryText) + "*")
                     .caseInsensitive(true))
                     ._toQuery());
 
@@ -197,9 +457,19 @@ public class SearchService {
             boolQuery.filter(rangeQuery);
         }
 
+        // Lọc theo thương hiệu (được lưu như thuộc tính "brand" của sản phẩm)
+        if (StringUtils.hasText(request.getBrand())) {
+            boolQuery.filter(attributeFilter(BRAND_ATTRIBUTE, List.of(request.getBrand().trim())));
+        }
 
-
-
+        // Lọc theo thuộc tính: mỗi thuộc tính là một nested filter, các giá trị trong cùng thuộc tính là OR
+        if (request.getAttributes() != null) {
+            request.getAttributes().forEach((name, values) -> {
+                if (StringUtils.hasText(name) && values != null && !values.isEmpty()) {
+                    boolQuery.filter(attributeFilter(name, values));
+                }
+            });
+        }
         
         // Chỉ lấy các sản phẩm đang active
         boolQuery.filter(TermQuery.of(t -> t
@@ -210,6 +480,41 @@ public class SearchService {
         return boolQuery.build()._toQuery();
     }
 
+    /**
+     * Nested filter trên attributes: cùng một phần tử phải có đúng tên và một trong các giá trị.
+     * Chạy trong filter context nên Elasticsearch có thể cache kết quả.
+     */
+    private static Query attributeFilter(String name, List<String> values) {
+        List<FieldValue> fieldValues = values.stream()
+                .filter(Objects::nonNull)
+                .map(FieldValue::of)
+                .collect(Collectors.toList());
+
+        return NestedQuery.of(n -> n
+                .path("attributes")
+                .scoreMode(ChildScoreMode.None)
+                .query(q -> q.bool(b -> b
+                        .filter(TermQuery.of(t -> t.field("attributes.name").value(name))._toQuery())
+                        .filter(TermsQuery.of(t -> t
+                                .field("attributes.value")
+                                .terms(tv -> tv.value(fieldValues)))._toQuery()))))
+                ._toQuery();
+    }
+
+    /**
+     * Escape các ký tự đặc biệt của wildcard query để chúng được so khớp như ký tự thường
+     */
+    private static String escapeWildcard(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '*' || c == '?' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
     /**
      * Chuyển đổi kết quả Elasticsearch sang DTO SearchResponse (đơn giản hóa)
      */
@@ -223,6 +528,17 @@ public class SearchService {
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
         
+        // Highlight theo id sản phẩm, chỉ có khi request yêu cầu highlightFields
+        Map<String, Map<String, List<String>>> highlights = null;
+        if (!highlightFields(request).isEmpty()) {
+            highlights = new HashMap<>();
+            for (Hit<ProductIndexDto> hit : response.hits().hits()) {
+                if (hit.id() != null && !hit.highlight().isEmpty()) {
+                    highlights.put(hit.id(), hit.highlight());
+                }
+            }
+        }
+        
         Map<String, List<FacetEntry>> facets = new HashMap<>();
         
         // Xử lý facets nếu request yêu cầu và có kết quả aggregations
@@ -253,6 +569,20 @@ public class SearchService {
                                             .build());
                         });
             }
+            
+            // Xử lý facets thuộc tính, mỗi thuộc tính một facet với key "attr:<tên>"
+            if (response.aggregations().containsKey(ATTRIBUTES_AGG)) {
+                response.aggregations().get(ATTRIBUTES_AGG).nested().aggregations()
+                        .get(ATTRIBUTE_NAMES_AGG).sterms().buckets().array()
+                        .forEach(nameBucket -> facets.put(
+                                ATTRIBUTE_FACET_PREFIX + nameBucket.key().stringValue(),
+                                nameBucket.aggregations().get(ATTRIBUTE_VALUES_AGG).sterms().buckets().array().stream()
+                                        .map(valueBucket -> FacetEntry.builder()
+                                                .key(valueBucket.key().stringValue())
+                                                .count(valueBucket.docCount())
+                                                .build())
+                                        .collect(Collectors.toList())));
+            }
         }
         
         // Tính thời gian thực thi
@@ -266,29 +596,92 @@ public class SearchService {
                 .page(request.getFrom() / request.getSize())
                 .size(request.getSize())
                 .facets(facets)
+                .highlights(highlights)
                 .searchTime(searchTime)
                 .build();
     }
     
     /**
-     * Tạo cache key từ search request
+     * Tạo cache key từ search request.
+     * Key là fingerprint SHA-256 của dạng chuẩn hóa của request (query viết thường,
+     * danh sách và map được sắp xếp) nên các request tương đương dùng chung một key.
+     * Request được cá nhân hóa có thêm danh sách id được boost, không phải userId,
+     * nên các user có cùng gợi ý (hoặc chưa có gợi ý) vẫn dùng chung cache.
      */
-    private String generateCacheKey(com.fourj.searchservice.dto.SearchRequest request) {
-        return "search:" + 
-                Objects.hashCode(request.getQuery()) + ":" +
-                Objects.hashCode(request.getCategories()) + ":" +
-                Objects.hashCode(request.getBrand()) + ":" +
-                Objects.hashCode(request.getPriceRange()) + ":" + 
-                Objects.hashCode(request.getAttributes()) + ":" +
-                request.getSortOption() + ":" +
-                request.getFrom() + ":" +
-                request.getSize();
+    String generateCacheKey(com.fourj.searchservice.dto.SearchRequest request) {
+        return generateCacheKey(request, Collections.emptyList());
+    }
+
+    String generateCacheKey(com.fourj.searchservice.dto.SearchRequest request, List<String> boostIds) {
+        StringBuilder canonical = new StringBuilder(128);
+        canonical.append("q=").append(normalizeQuery(request.getQuery()));
+        canonical.append("|c=").append(sortedJoin(request.getCategories()));
+        canonical.append("|b=").append(request.getBrand() == null ? "" : request.getBrand().trim().toLowerCase());
+
+        PriceRange priceRange = request.getPriceRange();
+        canonical.append("|p=");
+        if (priceRange != null) {
+            canonical.append(plainNumber(priceRange.getMin())).append('-').append(plainNumber(priceRange.getMax()));
+        }
+
+        canonical.append("|a=");
+        if (request.getAttributes() != null) {
+            new TreeMap<>(request.getAttributes()).forEach((name, values) ->
+                    canonical.append(name).append(':').append(sortedJoin(values)).append(';'));
+        }
+
+        canonical.append("|s=").append(request.getSortOption() == null
+                ? com.fourj.searchservice.dto.SearchRequest.SortOption.RELEVANCE
+                : request.getSortOption());
+        canonical.append("|f=").append(request.getFrom());
+        canonical.append("|n=").append(request.getSize());
+        canonical.append("|agg=").append(request.isIncludeAggregations());
+        canonical.append("|compact=").append(request.isCompact());
+        canonical.append("|hl=").append(String.join(",", highlightFields(request)));
+        canonical.append("|boost=").append(sortedJoin(boostIds));
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return "search:" + HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 luôn có sẵn trên JVM chuẩn
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String normalizeQuery(String query) {
+        if (!StringUtils.hasText(query)) {
+            return "";
+        }
+        return query.trim().toLowerCase().replaceAll("\\s+", " ");
+    }
+
+    private static String sortedJoin(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return "";
+        }
+        return values.stream()
+                .filter(Objects::nonNull)
+                .map(String::trim)
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    private static String plainNumber(java.math.BigDecimal value) {
+        return value == null ? "" : value.stripTrailingZeros().toPlainString();
     }
     
     /**
      * Fallback method khi Elasticsearch không khả dụng
      */
     public com.fourj.searchservice.dto.SearchResponse searchProductsFallback(com.fourj.searchservice.dto.SearchRequest request, Exception ex) {
+        // Lỗi do request (vd: cursor không hợp lệ/hết hạn) không phải lỗi của Elasticsearch
+        if (ex instanceof SearchServiceException sse && sse.getStatus() < 500) {
+            throw sse;
+        }
+        
         log.error("Search fallback triggered due to: {}", ex.getMessage());
         
         return com.fourj.searchservice.dto.SearchResponse.builder()
@@ -302,36 +695,68 @@ public class SearchService {
     }
     
     /**
-     * Lấy suggestions cho auto-complete (đơn giản hóa)
+     * Lấy suggestions cho auto-complete (không lọc danh mục)
      */
-    @Cacheable(value = "suggestions", key = "#prefix")
     public List<String> getSuggestions(String prefix, int size) {
+        return getSuggestions(prefix, null, size);
+    }
+    
+    /**
+     * Lấy suggestions cho auto-complete bằng completion suggester trên trường nameSuggest.
+     * Hỗ trợ gõ sai (fuzzy) và lọc theo danh mục qua context "category".
+     * Kết quả của các prefix hay gõ được giữ trong cache bộ nhớ để trả về ngay.
+     */
+    public List<String> getSuggestions(String prefix, String category, int size) {
+        if (!StringUtils.hasText(prefix)) {
+            return Collections.emptyList();
+        }
+        
+        String normalizedPrefix = prefix.trim().toLowerCase();
+        String cacheKey = normalizedPrefix + "|" + (category == null ? "" : category) + "|" + size;
+        List<String> cached = suggestionCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        
         try {
-            log.info("Getting suggestions for prefix: '{}'", prefix);
-            String normalizedPrefix = prefix.toLowerCase().trim();
+            log.debug("Getting suggestions for prefix: '{}', category: {}", normalizedPrefix, category);
             
-            // Sử dụng prefix query đơn giản
-            SearchResponse<ProductIndexDto> response = client.search(s -> s
+            SearchResponse<Void> response = client.search(s -> s
                 .index(elasticsearchConfig.getIndexSettings().getProducts().getName())
-                .query(q -> q
-                    .prefix(p -> p
-                        .field("name")
-                        .value(normalizedPrefix)
+                .source(src -> src.fetch(false))
+                .suggest(sg -> sg
+                    .suggesters(NAME_SUGGESTER, fs -> fs
+                        .prefix(normalizedPrefix)
+                        .completion(c -> {
+                            c.field("nameSuggest")
+                                .size(size)
+                                .skipDuplicates(true)
+                                .fuzzy(f -> f
+                                    .fuzziness("AUTO")
+                                    .minLength(3)
+                                    .prefixLength(1));
+                            if (StringUtils.hasText(category)) {
+                                c.contexts("category", List.of(CompletionContext.of(cc -> cc
+                                    .context(ctx -> ctx.category(category)))));
+                            }
+                            return c;
+                        })
                     )
-                )
-                .size(size),
-                ProductIndexDto.class
+                ),
+                Void.class
             );
             
-            List<String> suggestions = response.hits().hits().stream()
-                .map(hit -> {
-                    assert hit.source() != null;
-                    return hit.source().getName();
-                })
+            List<String> suggestions = response.suggest()
+                .getOrDefault(NAME_SUGGESTER, Collections.emptyList()).stream()
+                .filter(Suggestion::isCompletion)
+                .flatMap(suggestion -> suggestion.completion().options().stream())
+                .map(CompletionSuggestOption::text)
                 .distinct()
+                .limit(size)
                 .collect(Collectors.toList());
-                
-            log.info("Found {} suggestions for prefix: '{}'", suggestions.size(), prefix);
+            
+            suggestionCache.put(cacheKey, suggestions);
+            log.debug("Found {} suggestions for prefix: '{}'", suggestions.size(), normalizedPrefix);
             return suggestions;
         } catch (Exception e) {
             log.error("Error getting suggestions for prefix: '{}'", prefix, e);
@@ -340,62 +765,13 @@ public class SearchService {
     }
     
     /**
-     * Tạo mới hoặc xóa và tạo lại index
+     * Tạo mới hoặc xóa và tạo lại index.
+     * Dùng chung mapping với IndexManagementService để không có 2 định nghĩa index khác nhau.
      */
     public boolean recreateIndex() throws IOException {
-        String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
-        log.info("Recreating index: {}", indexName);
-        
-        try {
-            // Kiểm tra xem index đã tồn tại chưa
-            boolean exists = client.indices().exists(e -> e.index(indexName)).value();
-            
-            // Nếu đã tồn tại thì xóa đi
-            if (exists) {
-                log.info("Index {} exists, deleting", indexName);
-                client.indices().delete(d -> d.index(indexName));
-            }
-            
-            // Tạo index mới với mapping và settings đơn giản
-            CreateIndexResponse response = client.indices().create(c -> c
-                .index(indexName)
-                .settings(s -> s
-                    .numberOfShards("1")  // Đơn giản hóa, chỉ dùng 1 shard
-                    .numberOfReplicas("0") // Không cần replica trong môi trường dev
-                    .refreshInterval(t -> t.time("1s")) // Refresh nhanh hơn
-                    .analysis(a -> a
-                        .analyzer("standard_lowercase", sa -> sa
-                            .custom(ca -> ca
-                                .tokenizer("standard")
-                                .filter("lowercase")
-                            )
-                        )
-                    )
-                )
-                .mappings(m -> m
-                    .properties("id", p -> p.keyword(k -> k))
-                    .properties("name", p -> p.text(t -> t
-                        .analyzer("standard_lowercase")
-                        .fields("keyword", f -> f.keyword(k -> k))
-                    ))
-                    .properties("description", p -> p.text(t -> t
-                        .analyzer("standard_lowercase")
-                    ))
-                    .properties("price", p -> p.double_(d -> d))
-                    .properties("imageUrl", p -> p.keyword(k -> k))
-                    .properties("categoryName", p -> p.keyword(k -> k))
-                    .properties("active", p -> p.boolean_(b -> b))
-                    .properties("inStock", p -> p.boolean_(b -> b))
-                    .properties("rating", p -> p.float_(f -> f))
-                )
-            );
-            
-            log.info("Index {} created successfully: {}", indexName, response.acknowledged());
-            return response.acknowledged();
-        } catch (Exception e) {
-            log.error("Error recreating index {}: {}", indexName, e.getMessage(), e);
-            throw e;
-        }
+        log.info("Recreating index: {}", elasticsearchConfig.getIndexSettings().getProducts().getName());
+        indexManagementService.recreateIndex();
+        return true;
     }
     
     /**
@@ -446,112 +822,83 @@ public class SearchService {
     }
     
     /**
-     * Index một sản phẩm vào Elasticsearch
+     * Index một sản phẩm vào Elasticsearch (admin).
+     * Đi qua ProductIndexingService như sự kiện Kafka: version tính từ updatedAt (không có thì lấy thời điểm hiện tại),
+     * nên không ghi đè được dữ liệu mới hơn, và được đưa vào retry log khi Elasticsearch lỗi.
+     *
+     * @return false nếu chưa ghi được và đã đưa vào retry log
      */
     public boolean indexProduct(ProductIndexDto product) throws IOException {
         String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
+        ensureIndexExists(indexName);
         
-        try {
-            // Kiểm tra xem index đã tồn tại chưa, nếu chưa thì tạo mới
-            boolean exists = client.indices().exists(e -> e.index(indexName)).value();
-            if (!exists) {
-                recreateIndex();
-            }
-            
-            // Index sản phẩm
-            log.info("Indexing product: {}", product.getId());
-            IndexResponse response = client.index(i -> i
-                .index(indexName)
-                .id(product.getId())
-                .document(product)
-            );
-            
+        log.info("Indexing product: {}", product.getId());
+        boolean written = productIndexingService.indexProduct(toProductDocument(product));
+        if (written) {
             // Refresh index để đảm bảo dữ liệu có sẵn ngay lập tức cho tìm kiếm
             client.indices().refresh(r -> r.index(indexName));
-            
-            log.info("Successfully indexed product: {}, result: {}", product.getId(), response.result().toString());
-            return true;
-        } catch (Exception e) {
-            log.error("Error indexing product {}: {}", product.getId(), e.getMessage(), e);
-            return false;
         }
+        return written;
     }
 
     /**
-     * Index nhiều sản phẩm vào Elasticsearch (bulk)
+     * Index nhiều sản phẩm vào Elasticsearch (admin, bulk), cùng cơ chế version và retry log như indexProduct
+     *
+     * @return false nếu có sản phẩm chưa ghi được (lỗi tạm thời đã được đưa vào retry log)
      */
-    public int bulkIndexProducts(List<ProductIndexDto> products) throws IOException {
+    public boolean bulkIndexProducts(List<ProductIndexDto> products) throws IOException {
         String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
-        int successCount = 0;
+        ensureIndexExists(indexName);
         
-        try {
-            // Kiểm tra xem index đã tồn tại chưa, nếu chưa thì tạo mới
-            boolean exists = client.indices().exists(e -> e.index(indexName)).value();
-            if (!exists) {
-                recreateIndex();
-            }
-            
-            // Sử dụng bulk indexing để tối ưu hiệu suất
-            BulkRequest.Builder bulkRequest = new BulkRequest.Builder();
-            
-            for (ProductIndexDto product : products) {
-                bulkRequest.operations(op -> op
-                    .index(idx -> idx
-                        .index(indexName)
-                        .id(product.getId())
-                        .document(product)
-                    )
-                );
-            }
-            
-            BulkResponse bulkResponse = client.bulk(bulkRequest.build());
-            
-            // Đếm số lượng thành công
-            successCount = (int) bulkResponse.items().stream()
-                .filter(item -> item.error() == null)
-                .count();
-            
-            // Refresh index để đảm bảo dữ liệu có sẵn cho tìm kiếm
-            client.indices().refresh(r -> r.index(indexName));
-            
-            log.info("Successfully bulk indexed {}/{} products", successCount, products.size());
-            return successCount;
-        } catch (Exception e) {
-            log.error("Error bulk indexing products: {}", e.getMessage(), e);
-            throw e;
-        }
+        boolean written = productIndexingService.bulkIndexProducts(products.stream()
+                .map(SearchService::toProductDocument)
+                .collect(Collectors.toList()));
+        
+        // Refresh index để đảm bảo dữ liệu có sẵn cho tìm kiếm
+        client.indices().refresh(r -> r.index(indexName));
+        log.info("Bulk indexed {} products, all written: {}", products.size(), written);
+        return written;
     }
 
     /**
-     * Xóa sản phẩm khỏi Elasticsearch
+     * Xóa sản phẩm khỏi Elasticsearch (admin). Version là thời điểm hiện tại, giống sự kiện PRODUCT_DELETED.
+     *
+     * @return false nếu chưa xóa được và đã đưa vào retry log
      */
     public boolean deleteProduct(String productId) throws IOException {
         String indexName = elasticsearchConfig.getIndexSettings().getProducts().getName();
         
-        try {
-            // Kiểm tra xem index đã tồn tại chưa
-            boolean exists = client.indices().exists(e -> e.index(indexName)).value();
-            if (!exists) {
-                log.warn("Index {} does not exist, cannot delete product", indexName);
-                return false;
-            }
-            
-            // Xóa sản phẩm theo ID
-            log.info("Deleting product: {}", productId);
-            DeleteResponse response = client.delete(d -> d
-                .index(indexName)
-                .id(productId)
-            );
-            
+        log.info("Deleting product: {}", productId);
+        boolean written = productIndexingService.deleteProduct(productId,
+                ProductIndexingService.toVersion(LocalDateTime.now()));
+        if (written) {
             // Refresh index để đảm bảo thay đổi có hiệu lực ngay lập tức
             client.indices().refresh(r -> r.index(indexName));
-            
-            boolean success = response.result() == Result.Deleted;
-            log.info("Delete product {}: {}", productId, success ? "successful" : "not found");
-            return success;
-        } catch (Exception e) {
-            log.error("Error deleting product {}: {}", productId, e.getMessage(), e);
-            return false;
         }
+        return written;
+    }
+    
+    private void ensureIndexExists(String indexName) throws IOException {
+        boolean exists = client.indices().exists(e -> e.index(indexName)).value();
+        if (!exists) {
+            recreateIndex();
+        }
+    }
+    
+    private static ProductDocument toProductDocument(ProductIndexDto product) {
+        LocalDateTime updatedAt = product.getUpdatedAt() != null ? product.getUpdatedAt() : LocalDateTime.now();
+        return ProductDocument.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .imageUrl(product.getImageUrl())
+                .categoryName(product.getCategoryName())
+                .active(product.isActive())
+                .inStock(product.getInStock())
+                .rating(product.getRating())
+                .updatedAt(updatedAt)
+                .version(ProductIndexingService.toVersion(updatedAt))
+                .build();
     }
 } 
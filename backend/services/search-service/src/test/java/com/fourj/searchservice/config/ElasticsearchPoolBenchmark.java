@@ -0,0 +1,120 @@
+package com.fourj.searchservice.config;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.MatchQuery;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tải đồng thời lên Elasticsearch qua RestClient do ElasticsearchConfig dựng, so sánh pool mặc định
+ * của RestClient (30 kết nối tổng / 10 mỗi node) với pool đã tinh chỉnh (elasticsearch.pool.* mặc định).
+ * 64 thread mô phỏng thread Tomcat cùng gọi search; SampleTime cho cả throughput lẫn p99.
+ * Cần Elasticsearch đang chạy (-Des.host, -Des.port, mặc định localhost:9200); benchmark tự tạo index tạm
+ * và xóa khi kết thúc. Chạy main() sau mvn test-compile, đổi số thread bằng tham số -t của JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(64)
+@Fork(1)
+public class ElasticsearchPoolBenchmark {
+
+    private static final String INDEX = "bench-connection-pool";
+    private static final int DOCUMENTS = 10_000;
+    private static final String[] WORDS = {"áo", "quần", "giày", "túi", "đồng hồ", "tai nghe", "balo", "mũ"};
+
+    @Param({"default", "tuned"})
+    String pool;
+
+    private RestClient restClient;
+    private ElasticsearchClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ElasticsearchConfig config = new ElasticsearchConfig();
+        config.setHost(System.getProperty("es.host", "localhost"));
+        config.setPort(Integer.getInteger("es.port", 9200));
+        config.setConnectTimeout(5_000);
+        config.setSocketTimeout(10_000);
+        if ("default".equals(pool)) {
+            // Giá trị mặc định của RestClient trước khi có elasticsearch.pool.*
+            config.getPool().setMaxConnTotal(30);
+            config.getPool().setMaxConnPerRoute(10);
+            config.getPool().setConnectionRequestTimeout(-1);
+            config.getPool().setCompressionEnabled(false);
+        }
+        restClient = config.restClient();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, config.jsonpMapper()));
+
+        if (client.indices().exists(e -> e.index(INDEX)).value()) {
+            client.indices().delete(d -> d.index(INDEX));
+        }
+        client.indices().create(c -> c
+                .index(INDEX)
+                .settings(s -> s.numberOfShards("1").numberOfReplicas("0")));
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String id = String.valueOf(i);
+            long price = i * 1000L;
+            String name = WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+            bulk.operations(op -> op.index(idx -> idx
+                    .index(INDEX)
+                    .id(id)
+                    .document(Map.of("id", id, "name", name, "price", price))));
+        }
+        if (client.bulk(bulk.build()).errors()) {
+            throw new IllegalStateException("Bulk load of the benchmark index failed");
+        }
+        client.indices().refresh(r -> r.index(INDEX));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.indices().delete(d -> d.index(INDEX));
+        restClient.close();
+    }
+
+    @Benchmark
+    public long search() throws IOException {
+        String word = WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)];
+        SearchResponse<Void> response = client.search(s -> s
+                .index(INDEX)
+                .size(20)
+                .requestCache(false)
+                .query(MatchQuery.of(m -> m.field("name").query(word))._toQuery()), Void.class);
+        return response.took();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ElasticsearchPoolBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
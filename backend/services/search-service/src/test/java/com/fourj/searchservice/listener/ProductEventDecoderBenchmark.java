@@ -0,0 +1,114 @@
+package com.fourj.searchservice.listener;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fourj.searchservice.dto.ProductEventDto;
+import com.fourj.searchservice.dto.ProductEventPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh decode JSON của ProductEventDecoder (streaming parser) với cách cũ dựng cây JsonNode
+ * rồi treeToValue từng payload. Chạy main() sau mvn test-compile (classpath test của search-service),
+ * kết quả dùng -prof gc để xem thêm lượng cấp phát mỗi message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductEventDecoderBenchmark {
+
+    private static final String PRODUCT = """
+            {"id":%d,"name":"Áo thun cotton %d","description":"Áo thun cổ tròn, vải cotton 100%%, nhiều màu",
+             "price":199000.50,"stockQuantity":120,"soldCount":34,"imageUrl":"https://cdn.fourj.vn/p/%d.png",
+             "categoryId":5,"categoryName":"Thời trang","active":true,"sellerId":"seller-1",
+             "attributes":[{"id":1,"name":"Màu","value":"Đỏ"},{"id":2,"name":"Size","value":"L"}],
+             "createdAt":"2024-01-02T03:04:05.123456","updatedAt":"2024-02-03T04:05:06.654321"}""";
+
+    // 1 = PRODUCT_UPDATED, lớn hơn = PRODUCT_BULK_UPDATED với danh sách products
+    @Param({"1", "50"})
+    int products;
+
+    private ObjectMapper objectMapper;
+    private ProductEventDecoder decoder;
+    private byte[] message;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        decoder = new ProductEventDecoder(objectMapper);
+
+        String json;
+        if (products == 1) {
+            json = "{\"eventType\":\"PRODUCT_UPDATED\",\"productId\":\"1\",\"version\":1706933106654321,\"payload\":"
+                    + PRODUCT.formatted(1, 1, 1) + "}";
+        } else {
+            List<String> items = new ArrayList<>(products);
+            for (int i = 1; i <= products; i++) {
+                items.add(PRODUCT.formatted(i, i, i));
+            }
+            json = "{\"eventType\":\"PRODUCT_BULK_UPDATED\",\"products\":[" + String.join(",", items) + "]}";
+        }
+        message = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ProductEventDto streaming() {
+        return decoder.decode(message);
+    }
+
+    @Benchmark
+    public ProductEventDto tree() throws IOException {
+        JsonNode eventNode = objectMapper.readTree(message);
+        ProductEventDto event = ProductEventDto.builder()
+                .eventType(eventNode.path("eventType").asText())
+                .productId(eventNode.path("productId").asText(null))
+                .version(eventNode.path("version").canConvertToLong() ? eventNode.path("version").asLong() : null)
+                .build();
+
+        JsonNode payload = eventNode.path("payload");
+        JsonNode products = eventNode.has("products") ? eventNode.path("products") : payload;
+        if (payload.isObject()) {
+            event.setPayload(objectMapper.treeToValue(payload, ProductEventPayload.class));
+        }
+        if (products.isArray()) {
+            List<ProductEventPayload> list = new ArrayList<>(products.size());
+            for (JsonNode node : products) {
+                list.add(objectMapper.treeToValue(node, ProductEventPayload.class));
+            }
+            event.setProducts(list);
+        }
+        return event;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProductEventDecoderBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,263 @@
+package com.fourj.searchservice.listener;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fourj.searchservice.dto.ProductEventDto;
+import com.fourj.searchservice.dto.ProductEventPayload;
+import com.fourj.searchservice.exception.KafkaProcessingException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Các vector nhị phân được sinh bởi ProductEventBinaryCodec và khóa trong ProductEventBinaryCodecTest
+ * của product-service: sửa một bên thì phải sửa cả hai.
+ */
+class ProductEventDecoderTest {
+
+    static final String UPDATED_V1 = "fe01"
+            + "0f50524f445543545f55504441544544"
+            + "07"
+            + "023432"
+            + "00061072557a3c71"
+            + "1fff01"
+            + "000000000000002a"
+            + "08c3816f207468756e"
+            + "06436f74746f6e"
+            + "0000000204012fa692"
+            + "00000007" + "00000003"
+            + "1168747470733a2f2f63646e2f612e706e67"
+            + "0000000000000005"
+            + "0c5468e1bb9d69207472616e67"
+            + "0873656c6c65722d31"
+            + "00060dedc04fb580" + "00061072557a3c71"
+            + "02" + "010000000000000001044dc3a07505c490e1bb8f" + "000453697a65014d";
+
+    static final String STOCK_DELTA_V1 = "fe01"
+            + "1550524f445543545f53544f434b5f55504441544544"
+            + "05"
+            + "023432"
+            + "001100"
+            + "000000000000002a"
+            + "00000000";
+
+    static final String DELETED_V1 = "fe01"
+            + "0f50524f445543545f44454c45544544"
+            + "01"
+            + "023432";
+
+    static final String BULK_V2 = "fe02"
+            + "1450524f445543545f42554c4b5f55504441544544"
+            + "08"
+            + "02"
+            + "080b01" + "0000000000000001" + "0141"
+            + "0000000101f1"
+            + "ffffffffffffffff"
+            + "100100" + "0000000000000002" + "00";
+
+    static final String BULK_EMPTY_V2 = "fe02"
+            + "1450524f445543545f42554c4b5f55504441544544"
+            + "08"
+            + "00";
+
+    private final ProductEventDecoder decoder = new ProductEventDecoder(new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+
+    @Test
+    void decodesFullBinaryEvent() {
+        ProductEventDto event = decoder.decode(HexFormat.of().parseHex(UPDATED_V1));
+
+        assertThat(event.getEventType()).isEqualTo("PRODUCT_UPDATED");
+        assertThat(event.getProductId()).isEqualTo("42");
+        assertThat(event.getVersion()).isEqualTo(1_706_933_106_654_321L);
+        assertThat(event.getProducts()).isNull();
+
+        ProductEventPayload product = event.getPayload();
+        assertThat(product.getId()).isEqualTo(42L);
+        assertThat(product.getName()).isEqualTo("Áo thun");
+        assertThat(product.getDescription()).isEqualTo("Cotton");
+        assertThat(product.getPrice()).isEqualTo(new BigDecimal("199000.50"));
+        assertThat(product.getStockQuantity()).isEqualTo(7);
+        assertThat(product.getSoldCount()).isEqualTo(3);
+        assertThat(product.getImageUrl()).isEqualTo("https://cdn/a.png");
+        assertThat(product.getCategoryId()).isEqualTo(5L);
+        assertThat(product.getCategoryName()).isEqualTo("Thời trang");
+        assertThat(product.getActive()).isTrue();
+        assertThat(product.getSellerId()).isEqualTo("seller-1");
+        assertThat(product.getCreatedAt()).isEqualTo(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_000));
+        assertThat(product.getUpdatedAt()).isEqualTo(LocalDateTime.of(2024, 2, 3, 4, 5, 6, 654_321_000));
+        assertThat(product.getAttributes()).containsExactly(
+                new ProductEventPayload.Attribute(1L, "Màu", "Đỏ"),
+                new ProductEventPayload.Attribute(null, "Size", "M"));
+    }
+
+    @Test
+    void leavesOmittedFieldsNull() {
+        ProductEventDto event = decoder.decode(HexFormat.of().parseHex(STOCK_DELTA_V1));
+
+        assertThat(event.getEventType()).isEqualTo("PRODUCT_STOCK_UPDATED");
+        assertThat(event.getVersion()).isNull();
+
+        ProductEventPayload product = event.getPayload();
+        assertThat(product.getId()).isEqualTo(42L);
+        assertThat(product.getStockQuantity()).isZero();
+        assertThat(product.getActive()).isFalse();
+        assertThat(product.getName()).isNull();
+        assertThat(product.getPrice()).isNull();
+        assertThat(product.getCategoryName()).isNull();
+        assertThat(product.getUpdatedAt()).isNull();
+        assertThat(product.getAttributes()).isNull();
+    }
+
+    @Test
+    void decodesEventWithoutPayload() {
+        ProductEventDto event = decoder.decode(HexFormat.of().parseHex(DELETED_V1));
+
+        assertThat(event.getEventType()).isEqualTo("PRODUCT_DELETED");
+        assertThat(event.getProductId()).isEqualTo("42");
+        assertThat(event.getPayload()).isNull();
+        assertThat(event.getProducts()).isNull();
+    }
+
+    @Test
+    void decodesProductListFromVersion2() {
+        ProductEventDto event = decoder.decode(HexFormat.of().parseHex(BULK_V2));
+
+        assertThat(event.getEventType()).isEqualTo("PRODUCT_BULK_UPDATED");
+        assertThat(event.getProductId()).isNull();
+        assertThat(event.getPayload()).isNull();
+        assertThat(event.getProducts()).hasSize(2);
+
+        ProductEventPayload first = event.getProducts().get(0);
+        assertThat(first.getId()).isEqualTo(1L);
+        assertThat(first.getName()).isEqualTo("A");
+        assertThat(first.getPrice()).isEqualTo(new BigDecimal("-1.5"));
+        assertThat(first.getActive()).isTrue();
+        assertThat(first.getUpdatedAt()).isEqualTo(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_000));
+        assertThat(first.getAttributes()).isNull();
+
+        ProductEventPayload second = event.getProducts().get(1);
+        assertThat(second.getId()).isEqualTo(2L);
+        assertThat(second.getActive()).isFalse();
+        assertThat(second.getName()).isNull();
+        assertThat(second.getAttributes()).isEmpty();
+    }
+
+    @Test
+    void decodesEmptyProductList() {
+        ProductEventDto event = decoder.decode(HexFormat.of().parseHex(BULK_EMPTY_V2));
+
+        assertThat(event.getProducts()).isEmpty();
+    }
+
+    @Test
+    void fallsBackToJson() {
+        String json = """
+                {"eventType":"PRODUCT_UPDATED","productId":"42","version":1706933106654321,
+                 "payload":{"id":42,"name":"Áo thun","price":199000.50,"active":true,
+                            "updatedAt":"2024-02-03T04:05:06.654321"}}
+                """;
+
+        ProductEventDto event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.getEventType()).isEqualTo("PRODUCT_UPDATED");
+        assertThat(event.getProductId()).isEqualTo("42");
+        assertThat(event.getVersion()).isEqualTo(1_706_933_106_654_321L);
+        assertThat(event.getPayload().getName()).isEqualTo("Áo thun");
+        assertThat(event.getPayload().getPrice()).isEqualByComparingTo("199000.50");
+        assertThat(event.getPayload().getActive()).isTrue();
+        assertThat(event.getPayload().getUpdatedAt()).isEqualTo(LocalDateTime.of(2024, 2, 3, 4, 5, 6, 654_321_000));
+    }
+
+    @Test
+    void readsLegacyProductListFromPayload() {
+        String json = """
+                {"eventType":"PRODUCT_BULK_UPDATED","payload":[{"id":1,"stockQuantity":3},null,{"id":2}],"version":7}
+                """;
+
+        ProductEventDto event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.getPayload()).isNull();
+        assertThat(event.getProducts()).hasSize(2);
+        assertThat(event.getProducts().get(0).getStockQuantity()).isEqualTo(3);
+        assertThat(event.getProducts().get(1).getId()).isEqualTo(2L);
+        // Trường sau mảng vẫn được đọc
+        assertThat(event.getVersion()).isEqualTo(7L);
+    }
+
+    @Test
+    void prefersProductsOverLegacyPayloadList() {
+        String json = """
+                {"eventType":"PRODUCT_BULK_UPDATED","payload":[{"id":1}],"products":[{"id":2}]}
+                """;
+
+        ProductEventDto event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.getProducts()).hasSize(1);
+        assertThat(event.getProducts().get(0).getId()).isEqualTo(2L);
+    }
+
+    @Test
+    void skipsUnknownFieldsAndNulls() {
+        String json = """
+                {"source":{"service":"product-service","tags":["a",{"b":[1,2]}]},"eventType":"PRODUCT_UPDATED",
+                 "productId":null,"version":"15","extra":[[1],[2]],"payload":{"id":3,"unknown":{"x":1},"name":null},
+                 "products":null}
+                """;
+
+        ProductEventDto event = decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.getEventType()).isEqualTo("PRODUCT_UPDATED");
+        assertThat(event.getProductId()).isNull();
+        assertThat(event.getVersion()).isEqualTo(15L);
+        assertThat(event.getPayload().getId()).isEqualTo(3L);
+        assertThat(event.getPayload().getName()).isNull();
+        assertThat(event.getProducts()).isNull();
+    }
+
+    @Test
+    void rejectsJsonThatIsNotAnObject() {
+        assertThatThrownBy(() -> decoder.decode("[{\"eventType\":\"PRODUCT_UPDATED\"}]".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(KafkaProcessingException.class)
+                .hasMessageContaining("not a JSON object");
+        assertThatThrownBy(() -> decoder.decode("{\"eventType\":\"PRODUCT_UPDATED\",\"payload\":{".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(KafkaProcessingException.class)
+                .hasMessageContaining("Malformed");
+        assertThatThrownBy(() -> decoder.decode("{\"products\":[1]}".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(KafkaProcessingException.class);
+    }
+
+    @Test
+    void rejectsUnknownFormatVersion() {
+        byte[] message = HexFormat.of().parseHex("fe09" + DELETED_V1.substring(4));
+
+        assertThatThrownBy(() -> decoder.decode(message))
+                .isInstanceOf(KafkaProcessingException.class)
+                .hasMessageContaining("format version");
+    }
+
+    @Test
+    void rejectsTruncatedBinaryEvent() {
+        byte[] message = HexFormat.of().parseHex(UPDATED_V1);
+        byte[] truncated = Arrays.copyOf(message, message.length / 2);
+
+        assertThatThrownBy(() -> decoder.decode(truncated))
+                .isInstanceOf(KafkaProcessingException.class)
+                .hasMessageContaining("Malformed");
+    }
+
+    @Test
+    void rejectsEmptyMessage() {
+        assertThatThrownBy(() -> decoder.decode(new byte[0]))
+                .isInstanceOf(KafkaProcessingException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package com.fourj.searchservice.listener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fourj.searchservice.dto.ProductEventDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Số event/giây mà ProductEventDecoder decode được với định dạng nhị phân so với JSON của cùng một event.
+ * Message nhị phân là vector UPDATED_V1 đã khóa với ProductEventBinaryCodec của product-service,
+ * message JSON được sinh từ chính event đó nên hai bên mang cùng dữ liệu; số byte mỗi message in ra ở setUp.
+ * Chạy main() sau mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductEventFormatBenchmark {
+
+    @Param({"binary", "json"})
+    String format;
+
+    private ProductEventDecoder decoder;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        decoder = new ProductEventDecoder(objectMapper);
+
+        byte[] binary = HexFormat.of().parseHex(ProductEventDecoderTest.UPDATED_V1);
+        if ("binary".equals(format)) {
+            message = binary;
+        } else {
+            ProductEventDto event = decoder.decode(binary);
+            message = objectMapper.writeValueAsBytes(event);
+            if (!decoder.decode(message).equals(event)) {
+                throw new IllegalStateException("JSON message does not carry the same event as the binary vector");
+            }
+        }
+        System.out.printf("format=%s message bytes=%d%n", format, message.length);
+    }
+
+    @Benchmark
+    public ProductEventDto decode() {
+        return decoder.decode(message);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProductEventFormatBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
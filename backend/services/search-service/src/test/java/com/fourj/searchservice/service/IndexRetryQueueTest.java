@@ -0,0 +1,67 @@
+package com.fourj.searchservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fourj.searchservice.service.IndexRetryQueue.RetryEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexRetryQueueTest {
+
+    @Test
+    void higherVersionWinsRegardlessOfLogOrder() {
+        RetryEntry newer = new RetryEntry("INDEX", "1", 1_000, 200L, null, null);
+        RetryEntry older = new RetryEntry("DELETE", "1", 2_000, 100L, null, null);
+
+        assertThat(IndexRetryQueue.newer(newer, older)).isSameAs(newer);
+        assertThat(IndexRetryQueue.newer(older, newer)).isSameAs(newer);
+    }
+
+    @Test
+    void entriesWithoutVersionFallBackToLogOrder() {
+        RetryEntry first = new RetryEntry("INDEX", "1", 1_000, 200L, null, null);
+        RetryEntry second = new RetryEntry("INDEX", "1", 2_000, null, null, null);
+
+        assertThat(IndexRetryQueue.newer(first, second)).isSameAs(second);
+    }
+
+    @Test
+    void entryIsSkippedOnlyWhenWrittenVersionIsNotOlder() throws Exception {
+        IndexRetryQueue queue = newQueue();
+        queue.enqueueDelete("1", 200L);
+        RetryEntry entry = new RetryEntry("DELETE", "1", 1_000, 200L, null, null);
+
+        // Ghi trực tiếp một version cũ hơn sau khi entry được enqueue: entry vẫn phải được replay
+        queue.markWritten("1", 100L);
+        assertThat(queue.alreadyWritten(entry)).isFalse();
+
+        queue.markWritten("1", 200L);
+        assertThat(queue.alreadyWritten(entry)).isTrue();
+
+        // Marker chỉ tăng, enqueue tiếp không xóa marker
+        queue.markWritten("1", 150L);
+        queue.enqueueDelete("1", 180L);
+        assertThat(queue.alreadyWritten(entry)).isTrue();
+        queue.close();
+    }
+
+    @Test
+    void entryWithoutVersionIsNeverSkipped() throws Exception {
+        IndexRetryQueue queue = newQueue();
+        queue.enqueueDelete("1", null);
+        queue.markWritten("1", 300L);
+
+        assertThat(queue.alreadyWritten(new RetryEntry("DELETE", "1", 1_000, null, null, null))).isFalse();
+        queue.close();
+    }
+
+    private static IndexRetryQueue newQueue() throws Exception {
+        Path log = Files.createTempDirectory("index-retry").resolve("index-retry.log");
+        return new IndexRetryQueue(null, null, new ObjectMapper(), null, new SimpleMeterRegistry(),
+                log.toString(), 200, 600_000);
+    }
+}
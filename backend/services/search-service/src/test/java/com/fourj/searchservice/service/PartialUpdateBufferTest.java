@@ -0,0 +1,73 @@
+package com.fourj.searchservice.service;
+
+import com.fourj.searchservice.service.ProductIndexingService.PartialUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartialUpdateBufferTest {
+
+    @Test
+    void newerDeltaOverridesFieldsAndKeepsTheRest() {
+        PartialUpdate current = new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 5, "price", 10_000));
+        PartialUpdate incoming = new PartialUpdate("1", 200, "Sách", Map.of("stockQuantity", 4));
+
+        PartialUpdate merged = PartialUpdateBuffer.merge(current, incoming);
+
+        assertThat(merged.version()).isEqualTo(200);
+        assertThat(merged.fields()).containsOnlyKeys("stockQuantity", "price");
+        assertThat(merged.fields()).containsEntry("stockQuantity", 4);
+        assertThat(merged.fields()).containsEntry("price", 10_000);
+    }
+
+    @Test
+    void olderDeltaArrivingLateDoesNotOverrideNewerValues() {
+        PartialUpdate current = new PartialUpdate("1", 200, "Sách", Map.of("stockQuantity", 4));
+        PartialUpdate late = new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 5, "price", 10_000));
+
+        PartialUpdate merged = PartialUpdateBuffer.merge(current, late);
+
+        assertThat(merged.version()).isEqualTo(200);
+        assertThat(merged.fields()).containsEntry("stockQuantity", 4);
+        // Trường chỉ có ở delta cũ vẫn được giữ
+        assertThat(merged.fields()).containsEntry("price", 10_000);
+    }
+
+    @Test
+    void mergeIsIndependentOfArrivalOrder() {
+        PartialUpdate older = new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 5, "price", 10_000));
+        PartialUpdate newer = new PartialUpdate("1", 200, "Sách", Map.of("stockQuantity", 4, "soldCount", 9));
+
+        assertThat(PartialUpdateBuffer.merge(older, newer)).isEqualTo(PartialUpdateBuffer.merge(newer, older));
+    }
+
+    @Test
+    void equalVersionsPreferIncoming() {
+        PartialUpdate current = new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 5));
+        PartialUpdate incoming = new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 3));
+
+        assertThat(PartialUpdateBuffer.merge(current, incoming).fields()).containsEntry("stockQuantity", 3);
+    }
+
+    @Test
+    void categoryNameFallsBackToOlderDelta() {
+        PartialUpdate current = new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 5));
+        PartialUpdate incoming = new PartialUpdate("1", 200, null, Map.of("price", 12_000));
+
+        assertThat(PartialUpdateBuffer.merge(current, incoming).categoryName()).isEqualTo("Sách");
+        assertThat(PartialUpdateBuffer.merge(incoming,
+                new PartialUpdate("1", 300, "Văn phòng phẩm", Map.of())).categoryName()).isEqualTo("Văn phòng phẩm");
+    }
+
+    @Test
+    void onlyPriceChangesAndSellOutsInvalidateCachedSearches() {
+        assertThat(PartialUpdateBuffer.affectsSearchResults(
+                new PartialUpdate("1", 100, "Sách", Map.of("price", 12_000)))).isTrue();
+        assertThat(PartialUpdateBuffer.affectsSearchResults(
+                new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 0, "inStock", false)))).isTrue();
+        assertThat(PartialUpdateBuffer.affectsSearchResults(
+                new PartialUpdate("1", 100, "Sách", Map.of("stockQuantity", 4, "inStock", true, "soldCount", 9)))).isFalse();
+    }
+}
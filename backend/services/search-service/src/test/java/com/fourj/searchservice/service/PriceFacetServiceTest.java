@@ -0,0 +1,51 @@
+package com.fourj.searchservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriceFacetServiceTest {
+
+    @Test
+    void roundsPercentilesToTwoSignificantDigits() {
+        List<Double> boundaries = PriceFacetService.toBoundaries(List.of(123_456.0, 456_789.0, 987_654.0, 2_345_678.0));
+
+        assertThat(boundaries).containsExactly(120_000.0, 460_000.0, 990_000.0, 2_300_000.0);
+    }
+
+    @Test
+    void sortsAndDeduplicatesRoundedBoundaries() {
+        List<Double> boundaries = PriceFacetService.toBoundaries(List.of(151_000.0, 101_000.0, 149_000.0, 102_000.0));
+
+        assertThat(boundaries).containsExactly(100_000.0, 150_000.0);
+    }
+
+    @Test
+    void ignoresMissingAndNonPositiveValues() {
+        List<Double> boundaries = PriceFacetService.toBoundaries(Arrays.asList(null, Double.NaN, 0.0, -5.0, 49_000.0, 250_000.0));
+
+        assertThat(boundaries).containsExactly(49_000.0, 250_000.0);
+    }
+
+    @Test
+    void fallsBackToDefaultsWithFewerThanTwoBoundaries() {
+        // Mọi sản phẩm cùng giá: các percentile trùng nhau
+        assertThat(PriceFacetService.toBoundaries(List.of(300_000.0, 300_000.0, 300_000.0, 300_000.0)))
+                .isEqualTo(PriceFacetService.DEFAULT_BOUNDARIES);
+        // Index trống: percentile trả về NaN/null
+        assertThat(PriceFacetService.toBoundaries(Arrays.asList(Double.NaN, null)))
+                .isEqualTo(PriceFacetService.DEFAULT_BOUNDARIES);
+        assertThat(PriceFacetService.toBoundaries(List.of()))
+                .isEqualTo(PriceFacetService.DEFAULT_BOUNDARIES);
+    }
+
+    @Test
+    void roundNiceCarriesIntoNextMagnitude() {
+        assertThat(PriceFacetService.roundNice(95)).isEqualTo(95.0);
+        assertThat(PriceFacetService.roundNice(99.6)).isEqualTo(100.0);
+        assertThat(PriceFacetService.roundNice(1_950_000)).isEqualTo(2_000_000.0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.fourj.searchservice.service;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fourj.searchservice.exception.ClientErrorPredicate;
+import com.fourj.searchservice.exception.SearchServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class SearchCursorTest {
+
+    private final ClientErrorPredicate clientError = new ClientErrorPredicate();
+
+    @Test
+    void roundTripsPitAndSortValues() {
+        SearchCursor cursor = new SearchCursor("pit-123==", List.of(
+                FieldValue.of(1_700_000_000_000L),
+                FieldValue.of(12.5),
+                FieldValue.of(true),
+                FieldValue.of("Áo thun"),
+                FieldValue.NULL));
+
+        String encoded = cursor.encode();
+        SearchCursor decoded = SearchCursor.decode(encoded);
+
+        // base64url không padding: an toàn khi đặt trong query string
+        assertThat(encoded).doesNotContain("+", "/", "=");
+        assertThat(decoded.pitId()).isEqualTo("pit-123==");
+        assertThat(decoded.searchAfter()).hasSize(5);
+        assertThat(decoded.searchAfter().get(0).longValue()).isEqualTo(1_700_000_000_000L);
+        assertThat(decoded.searchAfter().get(1).doubleValue()).isEqualTo(12.5);
+        assertThat(decoded.searchAfter().get(2).booleanValue()).isTrue();
+        assertThat(decoded.searchAfter().get(3).stringValue()).isEqualTo("Áo thun");
+        assertThat(decoded.searchAfter().get(4).isNull()).isTrue();
+    }
+
+    @Test
+    void rejectsTamperedCursor() {
+        String encoded = new SearchCursor("pit-123", List.of(FieldValue.of(42L))).encode();
+        // Cắt cursor làm hỏng JSON bên trong
+        String truncated = encoded.substring(0, encoded.length() - 4);
+
+        assertInvalid(truncated);
+        assertInvalid(encoded + "!");
+        assertInvalid("not a cursor");
+    }
+
+    @Test
+    void rejectsCursorWithoutPitOrSortValues() {
+        assertInvalid(base64("{\"after\":[1]}"));
+        assertInvalid(base64("{\"pit\":\"\",\"after\":[1]}"));
+        assertInvalid(base64("{\"pit\":\"pit-123\"}"));
+        assertInvalid(base64("{\"pit\":\"pit-123\",\"after\":\"1\"}"));
+        assertInvalid(base64("[]"));
+    }
+
+    @Test
+    void translatesExpiredPitToClientError() {
+        RuntimeException error = SearchCursor.translateSearchError(elasticsearchError(404, "search_context_missing_exception"));
+
+        assertThat(error).isInstanceOf(SearchServiceException.class);
+        assertThat(((SearchServiceException) error).getErrorCode()).isEqualTo("CURSOR_EXPIRED");
+        assertThat(((SearchServiceException) error).getStatus()).isEqualTo(400);
+        // Không được tính là lỗi của Elasticsearch trong circuit breaker
+        assertThat(clientError.test(error)).isTrue();
+    }
+
+    @Test
+    void keepsOtherElasticsearchErrors() {
+        ElasticsearchException unavailable = elasticsearchError(503, "search_phase_execution_exception");
+
+        assertThat(SearchCursor.translateSearchError(unavailable)).isSameAs(unavailable);
+        assertThat(clientError.test(unavailable)).isFalse();
+    }
+
+    private void assertInvalid(String cursor) {
+        Throwable error = catchThrowable(() -> SearchCursor.decode(cursor));
+
+        assertThat(error)
+                .isInstanceOf(SearchServiceException.class)
+                .hasMessageContaining("Invalid search cursor");
+        assertThat(((SearchServiceException) error).getErrorCode()).isEqualTo("INVALID_CURSOR");
+        assertThat(clientError.test(error)).isTrue();
+    }
+
+    private static String base64(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ElasticsearchException elasticsearchError(int status, String type) {
+        return new ElasticsearchException("search", ErrorResponse.of(r -> r
+                .status(status)
+                .error(e -> e.type(type).reason(type))));
+    }
+}
@@ -0,0 +1,143 @@
+package com.fourj.searchservice.service;
+
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fourj.searchservice.config.ElasticsearchConfig;
+import com.fourj.searchservice.document.ProductDocument;
+import com.fourj.searchservice.dto.ProductIndexDto;
+import jakarta.json.stream.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đo kích thước response search và thời gian client decode một trang kết quả khi _source không lọc,
+ * lọc theo các trường của ProductIndexDto (FULL_SOURCE_FIELDS) và chế độ compact (COMPACT_SOURCE_FIELDS).
+ * Response được dựng sẵn giống hệt Elasticsearch trả về nên không cần cluster; số byte mỗi response in ra
+ * ở setUp. Chạy main() sau mvn test-compile, thêm -prof gc để xem lượng cấp phát.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchHitProjectionBenchmark {
+
+    @Param({"none", "full", "compact"})
+    String projection;
+
+    @Param({"20", "100"})
+    int hits;
+
+    private JsonpMapper mapper;
+    private JsonpDeserializer<SearchResponse<ProductIndexDto>> deserializer;
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = new ElasticsearchConfig().jsonpMapper();
+        deserializer = SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(ProductIndexDto.class));
+
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("took", 3).put("timed_out", false);
+        root.putObject("_shards").put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+        ObjectNode hitsNode = root.putObject("hits");
+        hitsNode.putObject("total").put("value", 1000).put("relation", "eq");
+        hitsNode.put("max_score", 1.0);
+        ArrayNode hitArray = hitsNode.putArray("hits");
+        for (int i = 1; i <= hits; i++) {
+            ObjectNode source = objectMapper.valueToTree(product(i));
+            List<String> includes = switch (projection) {
+                case "full" -> SearchService.FULL_SOURCE_FIELDS;
+                case "compact" -> SearchService.COMPACT_SOURCE_FIELDS;
+                default -> null;
+            };
+            if (includes != null) {
+                source.retain(includes);
+            }
+            ObjectNode hit = hitArray.addObject();
+            hit.put("_index", "products").put("_id", String.valueOf(i)).put("_score", 1.0);
+            hit.set("_source", source);
+        }
+        response = objectMapper.writeValueAsBytes(root);
+        System.out.printf("projection=%s hits=%d response bytes=%d%n", projection, hits, response.length);
+    }
+
+    @Benchmark
+    public SearchResponse<ProductIndexDto> decode() {
+        try (JsonParser parser = mapper.jsonProvider().createParser(new ByteArrayInputStream(response))) {
+            return deserializer.deserialize(parser, mapper);
+        }
+    }
+
+    private static ProductDocument product(int i) {
+        List<ProductDocument.ProductAttribute> attributes = new ArrayList<>();
+        attributes.add(new ProductDocument.ProductAttribute("color", "red", "Màu sắc", "Đỏ"));
+        attributes.add(new ProductDocument.ProductAttribute("size", "L", "Kích thước", "L"));
+        attributes.add(new ProductDocument.ProductAttribute("brand", "fourj", "Thương hiệu", "Fourj"));
+        attributes.add(new ProductDocument.ProductAttribute("material", "cotton", "Chất liệu", "Cotton 100%"));
+
+        return ProductDocument.builder()
+                .id(String.valueOf(i))
+                .name("Áo thun cotton cổ tròn " + i)
+                .nameSuggest(new Completion(List.of("Áo thun cotton cổ tròn " + i)))
+                .description("Áo thun cổ tròn, vải cotton 100% thoáng mát, co giãn bốn chiều, "
+                        + "phù hợp mặc hằng ngày và đi làm. Giặt máy ở nhiệt độ thường, không dùng chất tẩy.")
+                .price(new BigDecimal("199000.50"))
+                .stockQuantity(120)
+                .imageUrl("https://cdn.fourj.vn/p/" + i + ".png")
+                .categoryId(5L)
+                .categoryName("Thời trang")
+                .attributes(attributes)
+                .active(true)
+                .createdAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5))
+                .updatedAt(LocalDateTime.of(2024, 2, 3, 4, 5, 6))
+                .originalPrice(new BigDecimal("249000"))
+                .discountPercent(new BigDecimal("20"))
+                .inStock(true)
+                .images(Map.of(
+                        "front", "https://cdn.fourj.vn/p/" + i + "/front.png",
+                        "back", "https://cdn.fourj.vn/p/" + i + "/back.png",
+                        "detail", "https://cdn.fourj.vn/p/" + i + "/detail.png"))
+                .rating(4.5f)
+                .reviewCount(87)
+                .soldCount(34)
+                .tags(List.of("hot", "sale", "new"))
+                .version(1706933106654321L)
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SearchHitProjectionBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
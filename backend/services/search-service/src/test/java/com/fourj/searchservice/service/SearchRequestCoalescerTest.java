@@ -0,0 +1,79 @@
+package com.fourj.searchservice.service;
+
+import com.fourj.searchservice.dto.SearchResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchRequestCoalescerTest {
+
+    @Test
+    void followerSharesTheLeaderResult() throws Exception {
+        SearchRequestCoalescer coalescer = new SearchRequestCoalescer(new SimpleMeterRegistry(), 5_000);
+        SearchResponse leaderResponse = new SearchResponse();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<SearchResponse> leader = CompletableFuture.supplyAsync(() -> execute(coalescer, () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return leaderResponse;
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<SearchResponse> follower = CompletableFuture.supplyAsync(() -> execute(coalescer, () -> {
+            calls.incrementAndGet();
+            return new SearchResponse();
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(leaderResponse);
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isSameAs(leaderResponse);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void followerRunsItsOwnQueryWhenTheLeaderHangs() throws Exception {
+        SearchRequestCoalescer coalescer = new SearchRequestCoalescer(new SimpleMeterRegistry(), 50);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<SearchResponse> leader = CompletableFuture.supplyAsync(() -> execute(coalescer, () -> {
+            leaderStarted.countDown();
+            await(release);
+            return new SearchResponse();
+        }));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        SearchResponse own = new SearchResponse();
+        assertThat(coalescer.execute("key", () -> own)).isSameAs(own);
+
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+    }
+
+    private static SearchResponse execute(SearchRequestCoalescer coalescer, SearchRequestCoalescer.SearchCall call) {
+        try {
+            return coalescer.execute("key", call);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.fourj.searchservice.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.WildcardQuery;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh độ trễ tìm chuỗi con (*abc*) theo cách cũ (wildcard có * ở đầu trên trường text name)
+ * với trường con name.wildcard kiểu wildcard mà SearchService đang dùng, trên catalog tổng hợp.
+ * Cần Elasticsearch đang chạy (-Des.url, mặc định http://localhost:9200); benchmark tự tạo index tạm,
+ * nạp {@code catalogSize} sản phẩm rồi xóa index khi kết thúc. Chạy main() sau mvn test-compile,
+ * đổi kích thước catalog bằng tham số -p catalogSize=... của JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SubstringQueryBenchmark {
+
+    private static final String INDEX = "bench-substring-query";
+    private static final int BULK_SIZE = 5_000;
+
+    private static final String[] TYPES = {"Áo thun", "Quần jean", "Giày thể thao", "Túi xách", "Đồng hồ",
+            "Tai nghe", "Bàn phím", "Chuột không dây", "Ốp lưng", "Balo laptop"};
+    private static final String[] MATERIALS = {"cotton", "da bò", "vải lanh", "nhựa ABS", "thép không gỉ",
+            "polyester", "kaki", "nhôm", "cao su", "len"};
+    private static final String[] BRANDS = {"Fourj", "Sunrise", "Hanoi Craft", "Mekong", "Saigon Style",
+            "Lotus", "Bamboo", "Delta", "Phoenix", "Halong"};
+
+    @Param({"200000"})
+    int catalogSize;
+
+    // Chuỗi con nằm giữa từ ("thun", "ABS") và chuỗi vắt qua hai từ ("ng hồ")
+    @Param({"thun", "abs", "ng hồ"})
+    String substring;
+
+    private RestClient restClient;
+    private ElasticsearchClient client;
+    private String pattern;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        restClient = RestClient.builder(HttpHost.create(System.getProperty("es.url", "http://localhost:9200")))
+                .build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+        pattern = "*" + substring + "*";
+
+        if (client.indices().exists(e -> e.index(INDEX)).value()) {
+            client.indices().delete(d -> d.index(INDEX));
+        }
+        // Cùng kiểu mapping cho name như IndexManagementService (analyzer chuẩn thay cho vietnamese_analyzer)
+        client.indices().create(c -> c
+                .index(INDEX)
+                .settings(s -> s.numberOfShards("1").numberOfReplicas("0").refreshInterval(r -> r.time("-1")))
+                .mappings(m -> m
+                        .properties("id", p -> p.keyword(k -> k))
+                        .properties("name", p -> p.text(txt -> txt
+                                .fields("wildcard", f -> f.wildcard(w -> w))))));
+
+        Random random = new Random(42);
+        for (int from = 0; from < catalogSize; from += BULK_SIZE) {
+            BulkRequest.Builder bulk = new BulkRequest.Builder();
+            int to = Math.min(from + BULK_SIZE, catalogSize);
+            for (int i = from; i < to; i++) {
+                String id = String.valueOf(i);
+                String name = TYPES[random.nextInt(TYPES.length)] + " "
+                        + MATERIALS[random.nextInt(MATERIALS.length)] + " "
+                        + BRANDS[random.nextInt(BRANDS.length)] + " " + i;
+                bulk.operations(op -> op.index(idx -> idx
+                        .index(INDEX)
+                        .id(id)
+                        .document(Map.of("id", id, "name", name))));
+            }
+            BulkResponse response = client.bulk(bulk.build());
+            if (response.errors()) {
+                throw new IllegalStateException("Bulk load of the benchmark catalog failed");
+            }
+        }
+        client.indices().refresh(r -> r.index(INDEX));
+        client.indices().forcemerge(f -> f.index(INDEX).maxNumSegments(1L));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.indices().delete(d -> d.index(INDEX));
+        restClient.close();
+    }
+
+    /**
+     * Cách cũ: wildcard có * ở đầu trên trường text, phải duyệt toàn bộ term dictionary
+     */
+    @Benchmark
+    public long leadingWildcardOnText() throws IOException {
+        return search("name");
+    }
+
+    /**
+     * Cách hiện tại: trường con wildcard lọc ứng viên bằng n-gram rồi kiểm tra lại bằng doc values
+     */
+    @Benchmark
+    public long wildcardSubfield() throws IOException {
+        return search("name.wildcard");
+    }
+
+    private long search(String field) throws IOException {
+        SearchResponse<Void> response = client.search(s -> s
+                .index(INDEX)
+                .size(20)
+                .source(src -> src.fetch(false))
+                .trackTotalHits(t -> t.enabled(true))
+                .requestCache(false)
+                .query(WildcardQuery.of(w -> w
+                        .field(field)
+                        .value(pattern)
+                        .caseInsensitive(true))
+                        ._toQuery()), Void.class);
+        return response.hits().total() != null ? response.hits().total().value() : 0;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SubstringQueryBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}